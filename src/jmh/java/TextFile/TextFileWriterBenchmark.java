@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TextFileWriterBenchmark class measures writeResults with synthetic results of configurable size
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextFileWriterBenchmark {
+
+    //Where result folders are created, /dev/shm being tmpfs on most Linux systems
+    @Param({"/dev/shm", "target/jmh"})
+    public String directory;
+
+    @Param({"1", "100", "1000"})
+    public int assertionCount;
+
+    @Param({"1024", "1048576"})
+    public int responseSize;
+
+    @Param({"false", "true"})
+    public boolean headersAndAttachments;
+
+    @Param({"false", "true"})
+    public boolean failed;
+
+    private TextFileWriter writer;
+    private Path root;
+    private ParsedData parsedData;
+    private Response response;
+    private Result result;
+    private int iteration = 0;
+    private long count;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        root = Files.createTempDirectory(Files.createDirectories(new File(directory).toPath()), "textfilewriter");
+        writer = new TextFileWriter(new WriterSettings());
+        parsedData = new ParsedData(new Request("type", "http://localhost:8080/endpoint", "<soap:Envelope/>"), null, null);
+
+        LinkedHashMap<String, String> assertionResults = new LinkedHashMap<>();
+        for (int i = 0; i < assertionCount; i++) {
+            assertionResults.put("ContainsAssertion " + i, failed && i == 0 ? "Failed" : "Passed");
+        }
+        result = new Result(!failed, assertionResults);
+
+        StringBuilder body = new StringBuilder(responseSize);
+        while (body.length() < responseSize) {
+            body.append("<element attribute=\"value\">text</element>\n");
+        }
+        body.setLength(responseSize);
+        response = new Response(body.toString());
+        response.setResponseCode(200);
+        if (headersAndAttachments) {
+            response.setResponseHeaders("{Content-Type=[text/xml; charset=UTF-8], Content-Length=[" + responseSize + "]}");
+            response.setResponseAttachments("attachment-" + body.substring(0, Math.min(4096, responseSize)));
+        }
+
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        delete(root);
+    }
+
+    //Each iteration writes a run of its own with a new name per report, as reports never replace existing files
+    @Setup(Level.Iteration)
+    public void startRun() {
+        AllObjects.setObject("timestamp", "run" + ++iteration);
+        count = 0;
+    }
+
+    //Remove the run outside the measured calls, so deletes do not show up in the latencies
+    @TearDown(Level.Iteration)
+    public void removeRun() throws IOException {
+        Path run = root.resolve("results_run" + iteration);
+        if (Files.exists(run)) {
+            delete(run);
+        }
+    }
+
+    @Benchmark
+    public void writeResults() {
+        TestData testData = new TestData("BenchmarkTest" + count++ + ".xml", parsedData, root.resolve("results").toString());
+        writer.writeResults(testData, response, result);
+    }
+
+    private static void delete(Path folder) throws IOException {
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
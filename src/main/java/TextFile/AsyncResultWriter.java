@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.TestifyLogger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The AsyncResultWriter class queues results in a bounded queue and writes them in batches on dedicated writer threads
+ */
+class AsyncResultWriter implements ResultQueue {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final TextFileWriter writer;
+    private final BlockingQueue<PendingResult> queue;
+    private final Backpressure backpressure;
+    private final int batchSize;
+    private final List<Thread> threads = new ArrayList<>();
+
+    //Results accepted but not yet written, guarded by this
+    private long outstanding = 0;
+    private volatile boolean running = true;
+
+    //Held by submitters while they queue a result, and by shutdown while it stops accepting them
+    private final ReadWriteLock accepting = new ReentrantReadWriteLock();
+
+    AsyncResultWriter(TextFileWriter writer, WriterSettings settings) {
+
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.queueCapacity));
+        this.backpressure = settings.backpressure;
+        this.batchSize = Math.max(1, settings.batchSize);
+
+        //Start the writer threads
+        for (int i = 1; i <= Math.max(1, settings.writerThreads); i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "TextFileWriter-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+    }
+
+    /**
+     * Queue a result for writing, applying the configured backpressure policy when the queue is full
+     * @param pending the result to write
+     */
+    @Override
+    public void submit(PendingResult pending) {
+
+        accepting.readLock().lock();
+        try {
+
+            //Write on the calling thread once shut down so nothing is lost
+            if (!running) {
+                writer.writeReport(pending);
+                return;
+            }
+            enqueue(pending);
+
+        } finally {
+            accepting.readLock().unlock();
+        }
+
+    }
+
+    /**
+     * Block until every result accepted so far has been written
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    synchronized void flush() throws InterruptedException {
+        while (outstanding > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Flush the queue and stop the writer threads
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    @Override
+    public void shutdown() throws InterruptedException {
+
+        flush();
+
+        //Wait for submitters that are still queueing, later ones write on their own thread
+        accepting.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            accepting.writeLock().unlock();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //Write anything that slipped in while the threads were stopping
+        PendingResult pending;
+        while ((pending = queue.poll()) != null) {
+            writer.writeReport(pending);
+            completed(1);
+        }
+
+    }
+
+    private void enqueue(PendingResult pending) {
+
+        accepted();
+        switch (backpressure) {
+            case DROP_OLDEST:
+                while (!queue.offer(pending)) {
+                    PendingResult dropped = queue.poll();
+                    if (dropped != null) {
+                        TestifyLogger.error("Result queue full, dropped result for " + dropped.getTestData().getTestName(), this.getClass().getSimpleName());
+                        writer.getMetrics().recordDropped();
+                        completed(1);
+                    }
+                }
+                break;
+            case SPILL:
+                if (!queue.offer(pending)) {
+                    completed(1);
+                    writer.writeReport(pending);
+                }
+                break;
+            default:
+                try {
+                    queue.put(pending);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    completed(1);
+                    writer.writeReport(pending);
+                }
+        }
+
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void drain() {
+
+        List<PendingResult> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+
+                //Wait for one result, then take whatever else is ready up to the batch size
+                PendingResult first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            for (PendingResult pending : batch) {
+                try {
+                    writer.writeReport(pending);
+                } catch (RuntimeException e) {
+                    TestifyLogger.error(e.toString(), this.getClass().getSimpleName());
+                }
+            }
+            completed(batch.size());
+            batch.clear();
+        }
+
+    }
+
+    private synchronized void accepted() {
+        outstanding++;
+    }
+
+    private synchronized void completed(int count) {
+        outstanding -= count;
+        if (outstanding <= 0) {
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+/**
+ * The Backpressure enum lists what the asynchronous writer does when its queue is full
+ */
+enum Backpressure {
+
+    //Block the calling test thread until the queue has room
+    BLOCK,
+
+    //Discard the oldest queued result to make room for the new one
+    DROP_OLDEST,
+
+    //Write the result synchronously on the calling test thread
+    SPILL
+}
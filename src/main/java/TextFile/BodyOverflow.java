@@ -0,0 +1,29 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+/**
+ * The BodyOverflow enum lists what happens to a response or attachment body longer than the configured limit
+ */
+enum BodyOverflow {
+
+    //Write the body up to the limit followed by a truncation marker
+    TRUNCATE,
+
+    //Write the whole body to a sibling .body file and reference it from the report
+    SIDECAR
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The ChannelWrapper interface wraps the channels result files are written to, below the codec, such as to observe or fault the storage device
+ */
+interface ChannelWrapper {
+
+    /**
+     * @param target the channel writing a result file, sidecar or archive segment
+     * @return the channel to write to instead, which passes its writes and close on to the target
+     */
+    WritableByteChannel wrap(WritableByteChannel target);
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The Compression enum lists the codecs result files can be streamed through while they are written
+ */
+enum Compression {
+
+    //Plain text
+    NONE(""),
+
+    //JDK gzip with a configurable deflate level
+    GZIP(".gz") {
+        @Override
+        WritableByteChannel wrap(WritableByteChannel target, final int level) throws IOException {
+            return Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(target), BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            });
+        }
+
+        @Override
+        InputStream unwrap(InputStream source) throws IOException {
+            return new GZIPInputStream(source, BUFFER_SIZE);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 16384;
+
+    private final String extension;
+
+    Compression(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return the extension added after ".txt", empty for plain text
+     */
+    String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Wrap a channel so bytes written to it are compressed on the way through
+     * @param target the channel receiving the compressed bytes
+     * @param level the codec's compression level
+     * @return the compressing channel, whose close ends the compressed stream and closes the target
+     * @throws IOException if the compressed stream cannot be started
+     */
+    WritableByteChannel wrap(WritableByteChannel target, int level) throws IOException {
+        return target;
+    }
+
+    /**
+     * Wrap a stream so the bytes read from it are decompressed
+     * @param source the compressed stream
+     * @return the decompressing stream
+     * @throws IOException if the compressed stream cannot be read
+     */
+    InputStream unwrap(InputStream source) throws IOException {
+        return source;
+    }
+
+    /**
+     * Find the codec a file was written with from its name
+     * @param fileName the file name
+     * @return the codec whose extension the name ends with, NONE if there is none
+     */
+    static Compression forFileName(String fileName) {
+        for (Compression compression : values()) {
+            if (compression != NONE && fileName.endsWith(compression.extension)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.TestifyLogger;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The DirectoryExecutor class writes results on an executor, in parallel across result folders and in submission order within each one
+ */
+class DirectoryExecutor implements ResultQueue {
+
+    private final TextFileWriter writer;
+    private final ExecutorService executor;
+    private final Semaphore capacity;
+
+    //Results waiting to be written, by result folder and run timestamp
+    private final ConcurrentMap<String, DirectoryQueue> directories = new ConcurrentHashMap<>();
+
+    //Results accepted but not yet written, guarded by this
+    private long outstanding = 0;
+    private volatile boolean running = true;
+
+    //Held by submitters while they queue a result, and by shutdown while it stops accepting them
+    private final ReadWriteLock accepting = new ReentrantReadWriteLock();
+
+    DirectoryExecutor(TextFileWriter writer, WriterSettings settings) {
+        this.writer = writer;
+        this.capacity = new Semaphore(Math.max(1, settings.executorMaxPending));
+        ExecutorService virtualThreads = settings.executor == ExecutorMode.AUTO ? newVirtualThreadExecutor() : null;
+        this.executor = virtualThreads != null ? virtualThreads : newPlatformExecutor(Math.max(1, settings.executorThreads));
+    }
+
+    /**
+     * Queue a result behind the earlier results of its result folder, blocking while too many results are pending
+     * @param pending the result to write
+     */
+    @Override
+    public void submit(PendingResult pending) {
+
+        accepting.readLock().lock();
+        try {
+
+            //Write on the calling thread once shut down so nothing is lost
+            if (!running) {
+                writer.writeReport(pending);
+                return;
+            }
+            enqueue(pending);
+
+        } finally {
+            accepting.readLock().unlock();
+        }
+
+    }
+
+    private void enqueue(PendingResult pending) {
+
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.writeReport(pending);
+            return;
+        }
+        accepted();
+
+        String key = pending.getTestData().getResultFolder() + "\u0000" + pending.getTimestamp();
+        while (true) {
+            DirectoryQueue directory = directories.get(key);
+            if (directory == null) {
+                DirectoryQueue created = new DirectoryQueue(key);
+                directory = directories.putIfAbsent(key, created);
+                if (directory == null) {
+                    directory = created;
+                }
+            }
+
+            //A queue that has just drained removes itself, so take a fresh one
+            boolean schedule;
+            synchronized (directory) {
+                if (directory.retired) {
+                    continue;
+                }
+                directory.results.add(pending);
+                schedule = !directory.scheduled;
+                directory.scheduled = true;
+            }
+            if (schedule) {
+                try {
+                    executor.execute(directory);
+                } catch (RejectedExecutionException e) {
+                    directory.run();
+                }
+            }
+            return;
+        }
+
+    }
+
+    /**
+     * Block until every result accepted so far has been written, the completion barrier at the end of a run
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    synchronized void flush() throws InterruptedException {
+        while (outstanding > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Write every accepted result and stop the executor
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    @Override
+    public void shutdown() throws InterruptedException {
+
+        //Wait for submitters that are still queueing, later ones write on their own thread
+        accepting.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            accepting.writeLock().unlock();
+        }
+        flush();
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+    }
+
+    @Override
+    public synchronized int getQueueDepth() {
+        return (int) outstanding;
+    }
+
+    private synchronized void accepted() {
+        outstanding++;
+    }
+
+    private synchronized void completed() {
+        outstanding--;
+        if (outstanding <= 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Create an executor starting a virtual thread per task, looked up reflectively so the bundle still runs on older JVMs
+     * @return the executor, or null if the JVM has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            TestifyLogger.debug("Virtual threads unavailable, using a platform thread pool", DirectoryExecutor.class.getSimpleName());
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformExecutor(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TextFileWriter-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * The results of one result folder, written one at a time by a single task
+     */
+    private class DirectoryQueue implements Runnable {
+
+        private final String key;
+
+        //Guarded by this
+        private final Queue<PendingResult> results = new ArrayDeque<>();
+        private boolean scheduled = false;
+        private boolean retired = false;
+
+        DirectoryQueue(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                PendingResult pending;
+                synchronized (this) {
+                    pending = results.poll();
+                    if (pending == null) {
+                        retired = true;
+                        directories.remove(key, this);
+                        return;
+                    }
+                }
+                try {
+                    writer.writeReport(pending);
+                } catch (RuntimeException e) {
+                    TestifyLogger.error(e.toString(), this.getClass().getSimpleName());
+                } finally {
+                    capacity.release();
+                    completed();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+/**
+ * The Durability enum lists when written result files are forced to the storage device
+ */
+enum Durability {
+
+    //Leave it to the operating system
+    NONE,
+
+    //Force each result file before it is closed
+    FILE,
+
+    //Force every result file of the run in one batch when the run ends
+    RUN
+}
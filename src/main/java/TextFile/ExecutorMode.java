@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+/**
+ * The ExecutorMode enum lists where results are written when the parallel executor is used
+ */
+enum ExecutorMode {
+
+    //Write on the thread calling writeResults, or on the asynchronous queue when enabled
+    NONE,
+
+    //Write on virtual threads when the JVM provides them, otherwise on a bounded platform thread pool
+    AUTO,
+
+    //Write on a bounded platform thread pool
+    PLATFORM
+}
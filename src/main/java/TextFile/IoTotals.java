@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+/**
+ * The IoTotals class counts the bytes each thread writes to result files and the time it spends in those writes,
+ * measured at the file channels so compression counts as rendering rather than I/O
+ */
+final class IoTotals {
+
+    //Bytes written and nanoseconds spent writing by each thread
+    private static final ThreadLocal<long[]> TOTALS = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    private IoTotals() {
+    }
+
+    /**
+     * Add a write to the current thread's totals
+     * @param bytes the number of bytes written
+     * @param nanos the time the write took
+     */
+    static void record(long bytes, long nanos) {
+        long[] totals = TOTALS.get();
+        totals[0] += bytes;
+        totals[1] += nanos;
+    }
+
+    /**
+     * @return the number of bytes written to files by the current thread so far
+     */
+    static long threadBytes() {
+        return TOTALS.get()[0];
+    }
+
+    /**
+     * @return the nanoseconds the current thread has spent writing to files so far
+     */
+    static long threadNanos() {
+        return TOTALS.get()[1];
+    }
+}
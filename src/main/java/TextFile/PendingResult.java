@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.Response;
+import org.codice.testify.objects.Result;
+import org.codice.testify.objects.TestData;
+
+/**
+ * The PendingResult class holds one call to writeResults until it is written, along with the run timestamp at the time of the call
+ */
+class PendingResult {
+
+    private final TestData testData;
+    private final Response response;
+    private final Result result;
+    private final Object timestamp;
+
+    PendingResult(TestData testData, Response response, Result result, Object timestamp) {
+        this.testData = testData;
+        this.response = response;
+        this.result = result;
+        this.timestamp = timestamp;
+    }
+
+    TestData getTestData() {
+        return testData;
+    }
+
+    Response getResponse() {
+        return response;
+    }
+
+    Result getResult() {
+        return result;
+    }
+
+    Object getTimestamp() {
+        return timestamp;
+    }
+}
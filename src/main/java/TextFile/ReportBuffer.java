@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ReportBuffer class encodes report text through reusable character and direct byte buffers into a channel, pooled between writes
+ */
+class ReportBuffer extends Writer {
+
+    private static final int CAPACITY = 8192;
+
+    private static final int POOL_LIMIT = 64;
+
+    //Idle buffers, shared by all threads so short-lived virtual threads do not each allocate direct memory
+    private static final Queue<ReportBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    private final CharBuffer chars = CharBuffer.allocate(CAPACITY);
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(2 * CAPACITY);
+    private CharsetEncoder encoder;
+    private WritableByteChannel target;
+    private boolean closeTarget;
+    private boolean pooled;
+
+    private ReportBuffer() {
+    }
+
+    /**
+     * Take a pooled buffer pointed at a new output which the caller closes, the buffer returns to the pool when closed
+     * @param target where encoded bytes are written
+     * @param charset the charset to encode with
+     * @return an idle buffer
+     */
+    static ReportBuffer forChannel(WritableByteChannel target, Charset charset) {
+        ReportBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            buffer = new ReportBuffer();
+        } else {
+            POOL_SIZE.decrementAndGet();
+        }
+        buffer.pooled = true;
+        buffer.reset(target, charset, false);
+        return buffer;
+    }
+
+    /**
+     * Create a buffer of its own for an output written while another buffer is in use
+     * @param target where encoded bytes are written, closed along with the buffer
+     * @param charset the charset to encode with
+     * @return a new buffer
+     */
+    static ReportBuffer standalone(WritableByteChannel target, Charset charset) {
+        ReportBuffer buffer = new ReportBuffer();
+        buffer.reset(target, charset, true);
+        return buffer;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put((char) c);
+    }
+
+    @Override
+    public void write(char[] source, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int chunk = Math.min(chars.remaining(), end - offset);
+            chars.put(source, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    @Override
+    public void write(String source, int offset, int length) throws IOException {
+
+        //Copy strings through the buffer in fixed-size chunks so large bodies are never copied whole
+        int end = offset + length;
+        while (offset < end) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int chunk = Math.min(chars.remaining(), end - offset);
+            chars.put(source, offset, offset + chunk);
+            offset += chunk;
+        }
+
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+        drain();
+    }
+
+    /**
+     * Encode and write everything buffered, then release the output
+     * @throws IOException if the output cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (target == null) {
+            return;
+        }
+        try {
+            encode(true);
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+            drain();
+            if (closeTarget) {
+                target.close();
+            }
+        } finally {
+            target = null;
+            if (pooled) {
+                pooled = false;
+                if (POOL_SIZE.incrementAndGet() <= POOL_LIMIT) {
+                    POOL.offer(this);
+                } else {
+                    POOL_SIZE.decrementAndGet();
+                }
+            }
+        }
+
+    }
+
+    private void reset(WritableByteChannel target, Charset charset, boolean closeTarget) {
+
+        //Keep the encoder between reports unless the charset changes
+        if (encoder == null || !encoder.charset().equals(charset)) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        } else {
+            encoder.reset();
+        }
+        chars.clear();
+        bytes.clear();
+        this.target = target;
+        this.closeTarget = closeTarget;
+
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+
+        chars.flip();
+        CoderResult coderResult = encoder.encode(chars, bytes, endOfInput);
+        while (coderResult.isOverflow()) {
+            drain();
+            coderResult = encoder.encode(chars, bytes, endOfInput);
+        }
+
+        //An unpaired surrogate at the end stays buffered until the next write
+        chars.compact();
+
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            target.write(bytes);
+        }
+        bytes.clear();
+    }
+}
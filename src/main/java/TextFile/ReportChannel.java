@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.TestifyLogger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The ReportChannel class writes one result file to a temporary file through a FileChannel, either directly or through memory-mapped windows,
+ * and on close applies the durability policy and atomically moves it to its final name, never replacing an existing file
+ */
+class ReportChannel implements WritableByteChannel {
+
+    static final int MAP_WINDOW = 4 * 1024 * 1024;
+
+    private final ReportFiles files;
+    private final Path temporaryFile;
+    private final NextName nextName;
+
+    //The final name, moved on to the next one while files already on disk have it
+    private Path file;
+    private final FileChannel channel;
+    private final boolean mapped;
+
+    //The current mapped window and the file position it starts at
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+
+    //Bytes written so far
+    private long size = 0;
+
+    //Whether the file has been moved to its final name
+    private boolean published = false;
+
+    /**
+     * The NextName interface hands out another name for a result file whose name a file already on disk has, such as one left by an earlier writer
+     */
+    interface NextName {
+
+        /**
+         * @return the file to publish to instead, claimed for the caller
+         */
+        Path next();
+    }
+
+    ReportChannel(ReportFiles files, Path file, Path temporaryFile, FileChannel channel, boolean mapped, NextName nextName) {
+        this.files = files;
+        this.file = file;
+        this.temporaryFile = temporaryFile;
+        this.channel = channel;
+        this.mapped = mapped;
+        this.nextName = nextName;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+
+        long start = System.nanoTime();
+        if (!mapped) {
+            int count = channel.write(source);
+            size += count;
+            IoTotals.record(count, System.nanoTime() - start);
+            return count;
+        }
+
+        int written = 0;
+        while (source.hasRemaining()) {
+
+            //Map the next window once the current one is full
+            if (window == null || !window.hasRemaining()) {
+                nextWindow();
+            }
+            int count = Math.min(window.remaining(), source.remaining());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + count);
+            window.put(slice);
+            source.position(source.position() + count);
+            written += count;
+
+        }
+        size += written;
+        IoTotals.record(written, System.nanoTime() - start);
+        return written;
+
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Finish the file and move it to its final name
+     * @throws IOException if the file cannot be completed or moved
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            if (mapped && window != null) {
+
+                //Cut the file back from the end of the last window to what was written, which needs the window unmapped on some platforms
+                if (files.getDurability() == Durability.FILE) {
+                    window.force();
+                }
+                releaseWindow();
+                channel.truncate(size);
+
+            }
+            if (files.getDurability() == Durability.FILE) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        channel.close();
+
+        //Readers only ever see a complete report under the final name, and an existing file is never replaced
+        try {
+            publish();
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        published = true;
+
+        //Make the rename itself durable as well
+        if (files.getDurability() == Durability.FILE) {
+            ReportFiles.syncDirectory(file.getParent());
+        } else if (files.getDurability() == Durability.RUN) {
+            files.syncLater(file);
+        }
+
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the final name of the file, which may have moved on from the one it was opened with once it is published
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Discard the file, deleting the temporary file or, once published, the result file
+     */
+    void abort() {
+        releaseWindow();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //Nothing more to release
+        }
+        Path discarded = published ? file : temporaryFile;
+        try {
+            Files.deleteIfExists(discarded);
+        } catch (IOException e) {
+            TestifyLogger.error("Unable to delete " + discarded + ": " + e.getMessage(), this.getClass().getSimpleName());
+        }
+    }
+
+    //Give the temporary file its final name, taking the next name while a file already has it
+    private void publish() throws IOException {
+        while (true) {
+            try {
+                moveIntoPlace();
+                return;
+            } catch (FileAlreadyExistsException e) {
+                if (nextName == null) {
+                    throw e;
+                }
+                file = nextName.next();
+            }
+        }
+    }
+
+    //Give the temporary file its final name, failing if that name exists
+    private void moveIntoPlace() throws IOException {
+        try {
+
+            //Linking is atomic and fails on an existing file, unlike a rename
+            Files.createLink(file, temporaryFile);
+
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+
+            //File systems without hard links get a move that refuses to replace
+            Files.move(temporaryFile, file);
+            return;
+
+        }
+        try {
+            Files.delete(temporaryFile);
+        } catch (IOException e) {
+            TestifyLogger.error("Unable to delete " + temporaryFile + ": " + e.getMessage(), this.getClass().getSimpleName());
+        }
+    }
+
+    private void nextWindow() throws IOException {
+        if (window != null) {
+            if (files.getDurability() == Durability.FILE) {
+                window.force();
+            }
+            windowStart += window.position();
+            releaseWindow();
+        }
+        window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, MAP_WINDOW);
+    }
+
+    //Unmap the current window now rather than when it is garbage collected
+    private void releaseWindow() {
+        if (window != null) {
+            MappedByteBuffer released = window;
+            window = null;
+            Unmapper.unmap(released);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The ReportContent interface writes the text of one report, so it can be sent to a result file, an archive or a digest alike
+ */
+interface ReportContent {
+
+    /**
+     * Write the report text
+     * @param out where the report is written
+     * @param sidecars opens the sibling files for oversized bodies
+     * @throws IOException if the report cannot be written
+     */
+    void writeTo(Writer out, SidecarTarget sidecars) throws IOException;
+}
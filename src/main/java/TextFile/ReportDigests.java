@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The ReportDigests class remembers a content digest of each test's last full report, across runs, in a file next to the run folders
+ */
+class ReportDigests {
+
+    static final String SUFFIX = ".digests";
+
+    private static final String ALGORITHM = "SHA-1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path file;
+
+    //Report name to {digest, name of the run folder holding the full report}
+    private final ConcurrentMap<String, String[]> entries = new ConcurrentHashMap<>();
+
+    private ReportDigests(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the digests recorded by earlier runs
+     * @param file the digest file, which does not have to exist yet
+     * @return the digests
+     * @throws IOException if the file exists but cannot be read
+     */
+    static ReportDigests load(Path file) throws IOException {
+
+        ReportDigests digests = new ReportDigests(file);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3) {
+                    digests.entries.put(fields[0], new String[] {fields[1], fields[2]});
+                }
+            }
+        } catch (NoSuchFileException e) {
+            //First run for this result folder
+        }
+        return digests;
+
+    }
+
+    /**
+     * Check whether a report is identical to the last full report written for it
+     * @param name the report name
+     * @param digest the digest of the new report
+     * @return the name of the run folder holding the identical report, or null if it changed or is new
+     */
+    String unchangedSince(String name, String digest) {
+        String[] entry = entries.get(name);
+        return entry != null && entry[0].equals(digest) ? entry[1] : null;
+    }
+
+    /**
+     * Remember the digest of a full report
+     * @param name the report name
+     * @param digest the digest of the report
+     * @param runFolder the name of the run folder the report was written to
+     */
+    void record(String name, String digest, String runFolder) {
+        entries.put(name, new String[] {digest, runFolder});
+    }
+
+    /**
+     * Write the digests back to the digest file
+     * @throws IOException if the file cannot be written
+     */
+    synchronized void save() throws IOException {
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ReportFiles.TEMPORARY_SUFFIX);
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(entry.getValue()[0]);
+                writer.write('\t');
+                writer.write(entry.getValue()[1]);
+                writer.write('\n');
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+
+    }
+
+    /**
+     * Compute the digest of a report, including any body it would move into sibling files, without writing it anywhere
+     * @param content the report
+     * @param charset the charset the report is written with
+     * @return the digest as hex
+     * @throws IOException if the report cannot be rendered
+     */
+    static String digest(ReportContent content, final Charset charset) throws IOException {
+
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        //Feed every encoded byte into the digest instead of a file
+        final WritableByteChannel digestChannel = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                int count = source.remaining();
+                messageDigest.update(source);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        SidecarTarget sidecars = new SidecarTarget() {
+            @Override
+            public String name(String suffix) {
+                return suffix;
+            }
+
+            @Override
+            public Writer open(String suffix) {
+                return ReportBuffer.standalone(digestChannel, charset);
+            }
+
+            @Override
+            public void discard() {
+            }
+        };
+
+        ReportBuffer buffer = ReportBuffer.forChannel(digestChannel, charset);
+        content.writeTo(buffer, sidecars);
+        buffer.close();
+
+        byte[] digest = messageDigest.digest();
+        char[] hex = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.TestifyLogger;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The ReportFiles class opens result file channels with the configured charset, memory mapping and durability policy
+ */
+class ReportFiles {
+
+    static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Charset charset;
+    private final Durability durability;
+    private final long mapThreshold;
+    private final Compression compression;
+    private final int compressionLevel;
+    private final ChannelWrapper channelWrapper;
+
+    //Files waiting for the batched sync at the end of the run
+    private final Queue<Path> unsynced = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param charset the charset reports are encoded with
+     * @param durability when written files are forced to the storage device
+     * @param mapThreshold the expected size in bytes from which a report is written through memory mapping, 0 to never map
+     * @param compression the codec reports are streamed through
+     * @param compressionLevel the codec's compression level
+     * @param channelWrapper wraps every channel below the codec, null for none
+     */
+    ReportFiles(Charset charset, Durability durability, long mapThreshold, Compression compression, int compressionLevel, ChannelWrapper channelWrapper) {
+        this.charset = charset;
+        this.durability = durability;
+        this.mapThreshold = mapThreshold;
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+        this.channelWrapper = channelWrapper;
+    }
+
+    /**
+     * Open a temporary file that replaces a result file once the returned channel is closed
+     * @param file the file to write
+     * @param expectedSize the expected size of the content, used to decide on memory mapping
+     * @param nextName gives the file another name if one on disk already has its name, null to fail instead
+     * @return the channel to write to, which applies the durability policy and renames the file when closed
+     * @throws IOException if the file cannot be opened
+     */
+    ReportChannel open(Path file, long expectedSize, ReportChannel.NextName nextName) throws IOException {
+
+        boolean mapped = mapThreshold > 0 && expectedSize >= mapThreshold && Unmapper.isSupported();
+        Path temporaryFile = file.resolveSibling("." + file.getFileName() + TEMPORARY_SUFFIX);
+        FileChannel channel;
+        if (mapped) {
+            channel = FileChannel.open(temporaryFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        return new ReportChannel(this, file, temporaryFile, channel, mapped, nextName);
+
+    }
+
+    /**
+     * Force every file written since the last sync to the storage device
+     */
+    void sync() {
+
+        Set<Path> folders = new LinkedHashSet<>();
+        Path file;
+        while ((file = unsynced.poll()) != null) {
+            folders.add(file.getParent());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                //Discarded since it was written
+            } catch (IOException e) {
+                TestifyLogger.error("Unable to sync " + file + ": " + e.getMessage(), this.getClass().getSimpleName());
+            }
+        }
+        for (Path folder : folders) {
+            syncDirectory(folder);
+        }
+
+    }
+
+    /**
+     * Wrap a channel in the configured codec, on top of the channel wrapper if there is one
+     * @param target the channel receiving the compressed bytes
+     * @return the channel to write to, which must be closed to end the compressed stream
+     * @throws IOException if the compressed stream cannot be started
+     */
+    WritableByteChannel compress(WritableByteChannel target) throws IOException {
+        return compression.wrap(channelWrapper != null ? channelWrapper.wrap(target) : target, compressionLevel);
+    }
+
+    /**
+     * Force a folder's entries to the storage device, so files renamed into it survive a crash
+     * @param folder the folder to sync
+     */
+    static void syncDirectory(Path folder) {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //Some platforms, such as Windows, cannot open or force a folder
+        }
+    }
+
+    void syncLater(Path file) {
+        unsynced.add(file);
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    Compression getCompression() {
+        return compression;
+    }
+
+    Durability getDurability() {
+        return durability;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+/**
+ * The ReportLocation class records where a written report ended up: its file in the run folder and its byte range in that file
+ */
+class ReportLocation {
+
+    private final String fileName;
+    private final long offset;
+    private final long length;
+
+    ReportLocation(String fileName, long offset, long length) {
+        this.fileName = fileName;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    long getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.Request;
+import org.codice.testify.objects.Response;
+import org.codice.testify.objects.Result;
+import org.codice.testify.objects.TestData;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * The ReportRenderer class streams the text report of a test result into a Writer by walking a compiled template, without building it as a String first
+ */
+class ReportRenderer {
+
+    static final String LINE_SEPARATOR = System.lineSeparator();
+    static final String STATUS_SUCCESS = "Success";
+    static final String STATUS_FAILED = "Failed (See assertion results below)";
+    static final String BODY_SUFFIX = ".body";
+    static final String ATTACHMENTS_SUFFIX = "-attachments.body";
+
+    //Chunk size used when copying bodies into a file that is not behind a ReportBuffer
+    private static final int CHUNK = 8192;
+
+    private final ReportTemplate template;
+    private final ReportTemplate summaryTemplate;
+    private final long bodyLimit;
+    private final BodyOverflow bodyOverflow;
+
+    ReportRenderer() {
+        this(ReportTemplate.DEFAULT, ReportTemplate.DEFAULT_SUMMARY, 0, BodyOverflow.TRUNCATE);
+    }
+
+    /**
+     * @param template the layout of full reports
+     * @param summaryTemplate the layout of one-line reports
+     * @param bodyLimit the maximum number of response or attachment characters written into the report, 0 for no limit
+     * @param bodyOverflow what to do with bodies over the limit
+     */
+    ReportRenderer(ReportTemplate template, ReportTemplate summaryTemplate, long bodyLimit, BodyOverflow bodyOverflow) {
+        this.template = template;
+        this.summaryTemplate = summaryTemplate;
+        this.bodyLimit = bodyLimit;
+        this.bodyOverflow = bodyOverflow;
+    }
+
+    /**
+     * Write the report of a test result
+     * @param testData the test that was run
+     * @param response the response received by the test
+     * @param result the assertion results of the test
+     * @param out where the report is written
+     * @param sidecars opens the sibling files for oversized bodies
+     * @throws IOException if the report cannot be written
+     */
+    void render(TestData testData, Response response, Result result, Writer out, SidecarTarget sidecars) throws IOException {
+        writeSegments(template.getSegments(), testData, response, result, out, sidecars);
+    }
+
+    /**
+     * Write the one-line summary of a test result
+     * @param testData the test that was run
+     * @param response the response received by the test
+     * @param result the assertion results of the test
+     * @param out where the line is written
+     * @throws IOException if the line cannot be written
+     */
+    void renderHeader(TestData testData, Response response, Result result, Writer out) throws IOException {
+        writeSegments(summaryTemplate.getSegments(), testData, response, result, out, null);
+    }
+
+    /**
+     * Write the one-line summary of a test result followed by where its identical full report can be found
+     * @param testData the test that was run
+     * @param response the response received by the test
+     * @param result the assertion results of the test
+     * @param runFolder the name of the run folder holding the full report
+     * @param out where the line is written
+     * @throws IOException if the line cannot be written
+     */
+    void renderReference(TestData testData, Response response, Result result, String runFolder, Writer out) throws IOException {
+        renderHeader(testData, response, result, out);
+        out.write(" (unchanged, full report in ");
+        out.write(runFolder);
+        out.write(")");
+    }
+
+    private void writeSegments(ReportTemplate.Segment[] segments, TestData testData, Response response, Result result, Writer out, SidecarTarget sidecars) throws IOException {
+
+        for (ReportTemplate.Segment segment : segments) {
+            if (segment.literal != null) {
+                out.write(segment.literal);
+            } else if (segment.section != null) {
+                if (isPresent(segment.field, testData, response)) {
+                    writeSegments(segment.section, testData, response, result, out, sidecars);
+                }
+            } else {
+                writeField(segment.field, testData, response, result, out, sidecars);
+            }
+        }
+
+    }
+
+    private void writeField(ReportTemplate.Field field, TestData testData, Response response, Result result, Writer out, SidecarTarget sidecars) throws IOException {
+
+        Request request = testData.getParsedData().getRequest();
+        switch (field) {
+            case TEST_NAME:
+                write(out, testData.getTestName());
+                break;
+            case STATUS:
+                out.write(result.getTestResult() ? STATUS_SUCCESS : STATUS_FAILED);
+                break;
+            case ENDPOINT:
+                write(out, request.getEndpoint());
+                break;
+            case TEST_BLOCK:
+                write(out, request.getTestBlock());
+                break;
+            case ASSERTIONS:
+
+                //One line per assertion result
+                for (Map.Entry<String, String> assertion : result.getAssertionResults().entrySet()) {
+                    out.write(LINE_SEPARATOR);
+                    out.write("Assertion: ");
+                    write(out, assertion.getKey());
+                    out.write(" Result: ");
+                    write(out, assertion.getValue());
+                }
+                break;
+            case RESPONSE:
+                writeBody(out, response.getResponse(), sidecars, BODY_SUFFIX);
+                break;
+            case CODE:
+                out.write(Integer.toString(response.getResponseCode()));
+                break;
+            case HEADERS:
+                write(out, response.getResponseHeaders());
+                break;
+            case ATTACHMENTS:
+                writeBody(out, response.getResponseAttachments(), sidecars, ATTACHMENTS_SUFFIX);
+                break;
+            default:
+                throw new IllegalStateException("Unhandled template field " + field);
+        }
+
+    }
+
+    //Whether an optional section of the field is written
+    private static boolean isPresent(ReportTemplate.Field field, TestData testData, Response response) {
+
+        Request request = testData.getParsedData().getRequest();
+        switch (field) {
+            case ENDPOINT:
+                return request.getEndpoint() != null;
+            case TEST_BLOCK:
+                return request.getTestBlock() != null;
+            case RESPONSE:
+                return response.getResponse() != null;
+            case CODE:
+                return response.getResponseCode() != -1;
+            case HEADERS:
+                return response.getResponseHeaders() != null;
+            case ATTACHMENTS:
+                return response.getResponseAttachments() != null;
+            default:
+                return true;
+        }
+
+    }
+
+    //Write a response or attachment body, applying the size limit
+    private void writeBody(Writer out, String body, SidecarTarget sidecars, String suffix) throws IOException {
+
+        if (body == null || bodyLimit <= 0 || body.length() <= bodyLimit) {
+            write(out, body);
+            return;
+        }
+
+        if (bodyOverflow == BodyOverflow.SIDECAR && sidecars != null) {
+
+            //Move the whole body into the sibling file and reference it, a failed body is left for the caller to discard
+            Writer sidecar = sidecars.open(suffix);
+            for (int offset = 0; offset < body.length(); offset += CHUNK) {
+                sidecar.write(body, offset, Math.min(CHUNK, body.length() - offset));
+            }
+            sidecar.close();
+            out.write("[");
+            out.write(Integer.toString(body.length()));
+            out.write(" characters written to ");
+            out.write(sidecars.name(suffix));
+            out.write("]");
+
+        } else {
+
+            //Keep the start of the body and mark the rest as truncated
+            out.write(body, 0, (int) bodyLimit);
+            out.write(LINE_SEPARATOR);
+            out.write("[Truncated ");
+            out.write(Long.toString(body.length() - bodyLimit));
+            out.write(" of ");
+            out.write(Integer.toString(body.length()));
+            out.write(" characters]");
+
+        }
+
+    }
+
+    //Write a value the way string concatenation would, including "null"
+    private static void write(Writer out, Object value) throws IOException {
+        out.write(String.valueOf(value));
+    }
+}
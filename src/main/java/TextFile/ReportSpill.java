@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.TestifyLogger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The ReportSpill class holds reports that could not be written in a bounded ring and retries them on a background thread,
+ * backing off while the result folder stays unavailable, so test threads never wait for a failing volume
+ */
+class ReportSpill {
+
+    private final TextFileWriter writer;
+    private final int capacity;
+    private final int attempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final Thread thread;
+
+    //Reports waiting to be retried, oldest first, guarded by this
+    private final Deque<SpilledReport> reports = new ArrayDeque<>();
+    private boolean running = true;
+
+    ReportSpill(TextFileWriter writer, WriterSettings settings) {
+
+        this.writer = writer;
+        this.capacity = Math.max(1, settings.spillCapacity);
+        this.attempts = settings.retryAttempts;
+        this.initialBackoff = Math.max(1, settings.retryBackoff);
+        this.maxBackoff = Math.max(initialBackoff, settings.retryMaxBackoff);
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        }, "TextFileWriter-retry");
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+    /**
+     * Keep a report that could not be written for a later retry, pushing the oldest report out when the ring is full
+     * @param pending the report to retry
+     */
+    void add(PendingResult pending) {
+
+        SpilledReport lost = null;
+        String reason = null;
+        synchronized (this) {
+            if (!running) {
+                lost = new SpilledReport(pending);
+                reason = "writer stopped";
+            } else {
+                if (reports.size() >= capacity) {
+                    lost = reports.pollFirst();
+                    reason = "spill buffer full";
+                }
+                reports.addLast(new SpilledReport(pending));
+                notifyAll();
+            }
+        }
+        if (lost != null) {
+            lose(lost, reason);
+        }
+
+    }
+
+    /**
+     * Give every remaining report one last attempt without waiting, then stop the retry thread
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    void shutdown() throws InterruptedException {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        thread.join();
+    }
+
+    private void replay() {
+
+        long backoff = initialBackoff;
+        int failedInTurn = 0;
+        while (true) {
+
+            SpilledReport report;
+            boolean lastAttempt;
+            synchronized (this) {
+                while (running && reports.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                report = reports.pollFirst();
+                if (report == null) {
+                    return;
+                }
+                lastAttempt = !running;
+            }
+
+            boolean written;
+            try {
+                written = writer.retryReport(report.pending);
+            } catch (RuntimeException e) {
+                TestifyLogger.error(e.toString(), this.getClass().getSimpleName());
+                written = false;
+            }
+
+            //Write the next report straight away once the folder is back
+            if (written) {
+                backoff = initialBackoff;
+                failedInTurn = 0;
+                continue;
+            }
+
+            //Give up once out of retries, or after the last attempt when stopping
+            report.attempts++;
+            synchronized (this) {
+                if (report.attempts < attempts && !lastAttempt) {
+
+                    //Try the other reports before this one again, so a report that keeps failing cannot hold them up
+                    reports.addLast(report);
+                    if (++failedInTurn < reports.size() || !running) {
+                        continue;
+                    }
+
+                    //Every spilled report has failed in turn, wait before trying them again
+                    failedInTurn = 0;
+                    long deadline = System.currentTimeMillis() + backoff;
+                    long remaining;
+                    while (running && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        try {
+                            wait(remaining);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    backoff = Math.min(2 * backoff, maxBackoff);
+                    continue;
+
+                }
+            }
+            lose(report, "failed " + (report.attempts + 1) + " times");
+
+        }
+
+    }
+
+    private void lose(SpilledReport report, String reason) {
+        TestifyLogger.error("Gave up writing result for " + report.pending.getTestData().getTestName() + ": " + reason, this.getClass().getSimpleName());
+        writer.getMetrics().recordLost();
+    }
+
+    /**
+     * A report waiting in the spill buffer and the number of times it has been retried
+     */
+    private static class SpilledReport {
+
+        private final PendingResult pending;
+        private int attempts = 0;
+
+        SpilledReport(PendingResult pending) {
+            this.pending = pending;
+        }
+    }
+}
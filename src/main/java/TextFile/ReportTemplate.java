@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The ReportTemplate class is a report layout compiled once into a sequence of literal, field and optional section segments
+ *
+ * Layouts use ${field} for a value, ${?field} ... ${/field} for a section written only when the field has a value, and $$ for a literal $.
+ * Line breaks in the layout are written as the platform line separator.
+ */
+class ReportTemplate {
+
+    /**
+     * The Field enum lists the values a layout can refer to
+     */
+    enum Field {
+        TEST_NAME("testName"),
+        STATUS("status"),
+        ENDPOINT("endpoint"),
+        TEST_BLOCK("testBlock"),
+        ASSERTIONS("assertions"),
+        RESPONSE("response"),
+        CODE("code"),
+        HEADERS("headers"),
+        ATTACHMENTS("attachments");
+
+        private final String name;
+
+        Field(String name) {
+            this.name = name;
+        }
+
+        static Field forName(String name) {
+            for (Field field : values()) {
+                if (field.name.equals(name)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unknown template field ${" + name + "}");
+        }
+    }
+
+    /**
+     * The Segment class is one compiled piece of a layout: a literal, a field, or a field's optional section
+     */
+    static final class Segment {
+
+        final String literal;
+        final Field field;
+        final Segment[] section;
+
+        private Segment(String literal, Field field, Segment[] section) {
+            this.literal = literal;
+            this.field = field;
+            this.section = section;
+        }
+    }
+
+    static final String DEFAULT_LAYOUT = "Results for test: ${testName} --------- ${status}\n\n" +
+            "Endpoint: ${endpoint}\n\n" +
+            "Test: ${testBlock}\n\n" +
+            "Assertion Results: ${assertions}\n\n" +
+            "Response: ${response}" +
+            "${?code}\nResponse Code: ${code}${/code}" +
+            "${?headers}\nResponse Headers: ${headers}${/headers}" +
+            "${?attachments}\nResponse Attachments: ${attachments}${/attachments}";
+
+    static final String DEFAULT_SUMMARY_LAYOUT = "Results for test: ${testName} --------- ${status}";
+
+    static final ReportTemplate DEFAULT = compile(DEFAULT_LAYOUT);
+    static final ReportTemplate DEFAULT_SUMMARY = compile(DEFAULT_SUMMARY_LAYOUT);
+
+    private final Segment[] segments;
+
+    private ReportTemplate(Segment[] segments) {
+        this.segments = segments;
+    }
+
+    Segment[] getSegments() {
+        return segments;
+    }
+
+    /**
+     * Parse a layout into its segments
+     * @param layout the layout text
+     * @return the compiled template
+     * @throws IllegalArgumentException if the layout refers to an unknown field or its sections do not match
+     */
+    static ReportTemplate compile(String layout) {
+
+        //Sections being parsed, innermost first, and the segments collected for each
+        Deque<Field> openSections = new ArrayDeque<>();
+        Deque<List<Segment>> levels = new ArrayDeque<>();
+        levels.push(new ArrayList<Segment>());
+        StringBuilder literal = new StringBuilder();
+
+        int i = 0;
+        while (i < layout.length()) {
+            char c = layout.charAt(i);
+            if (c == '$' && layout.startsWith("$$", i)) {
+                literal.append('$');
+                i += 2;
+            } else if (c == '$' && layout.startsWith("${", i)) {
+
+                int end = layout.indexOf('}', i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed ${ at position " + i + " of template");
+                }
+                String name = layout.substring(i + 2, end);
+                addLiteral(levels.peek(), literal);
+
+                if (name.startsWith("?")) {
+                    openSections.push(Field.forName(name.substring(1)));
+                    levels.push(new ArrayList<Segment>());
+                } else if (name.startsWith("/")) {
+                    Field field = Field.forName(name.substring(1));
+                    if (openSections.isEmpty() || openSections.peek() != field) {
+                        throw new IllegalArgumentException("Unexpected ${" + name + "} at position " + i + " of template");
+                    }
+                    openSections.pop();
+                    List<Segment> section = levels.pop();
+                    levels.peek().add(new Segment(null, field, section.toArray(new Segment[section.size()])));
+                } else {
+                    levels.peek().add(new Segment(null, Field.forName(name), null));
+                }
+                i = end + 1;
+
+            } else if (c == '\r' || c == '\n') {
+
+                //Any line break becomes the platform line separator
+                literal.append(ReportRenderer.LINE_SEPARATOR);
+                i += c == '\r' && layout.startsWith("\r\n", i) ? 2 : 1;
+
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+
+        if (!openSections.isEmpty()) {
+            throw new IllegalArgumentException("Unclosed ${?" + openSections.peek().name + "} in template");
+        }
+        List<Segment> segments = levels.pop();
+        addLiteral(segments, literal);
+        return new ReportTemplate(segments.toArray(new Segment[segments.size()]));
+
+    }
+
+    private static void addLiteral(List<Segment> segments, StringBuilder literal) {
+        if (literal.length() > 0) {
+            segments.add(new Segment(literal.toString(), null, null));
+            literal.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.TestifyLogger;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The ResultDirectories class resolves and creates each run's result folder once, and hands out report names that are unique within it
+ *
+ * Folders are kept per result folder and run timestamp, so results of an earlier run written late never disturb the current one,
+ * and are forgotten a few runs later. Names are only checked against this writer's claims, a file already on disk under a claimed
+ * name makes publishing the report take the next one
+ */
+class ResultDirectories {
+
+    //Number of most recent run timestamps whose folders and names are kept
+    static final int RETAINED_RUNS = 4;
+
+    private final ConcurrentMap<String, Path> resolved = new ConcurrentHashMap<>();
+
+    //Run folders that could not be created, already reported
+    private final ConcurrentMap<String, Boolean> failed = new ConcurrentHashMap<>();
+
+    //Report names taken in each run folder by this writer
+    private final ConcurrentMap<Path, ConcurrentMap<String, Boolean>> claims = new ConcurrentHashMap<>();
+
+    //Run folder names of each retained timestamp, oldest run first, guarded by this
+    private final Map<Object, List<String>> runs = new LinkedHashMap<>();
+
+    /**
+     * Get the result folder of a run, creating it the first time it is asked for
+     * @param resultFolder the result folder of the test
+     * @param timestamp the timestamp of the run
+     * @return the folder, or null if it could not be created, which is only logged the first time
+     */
+    Path resolve(String resultFolder, Object timestamp) {
+        return resolve(resultFolder, timestamp, false);
+    }
+
+    /**
+     * Get the result folder of a run, trying again to create it if that failed before without logging the failure again
+     * @param resultFolder the result folder of the test
+     * @param timestamp the timestamp of the run
+     * @return the folder, or null if it still cannot be created
+     */
+    Path retry(String resultFolder, Object timestamp) {
+        return resolve(resultFolder, timestamp, true);
+    }
+
+    private Path resolve(String resultFolder, Object timestamp, boolean retry) {
+
+        String name = resultFolder + "_" + timestamp;
+        Path folder = resolved.get(name);
+        if (folder != null) {
+            return folder;
+        }
+
+        synchronized (this) {
+
+            folder = resolved.get(name);
+            if (folder != null) {
+                return folder;
+            }
+            boolean reported = failed.containsKey(name);
+            if (reported && !retry) {
+                return null;
+            }
+            if (!reported) {
+                retain(timestamp, name);
+            }
+            try {
+                folder = Files.createDirectories(Paths.get(name));
+                resolved.put(name, folder);
+                failed.remove(name);
+            } catch (IOException | RuntimeException e) {
+                if (!reported) {
+                    failed.put(name, Boolean.TRUE);
+                    TestifyLogger.error("Unable to create result folder " + name + ", its results will not be written: " + e, this.getClass().getSimpleName());
+                }
+            }
+            return folder;
+
+        }
+
+    }
+
+    //Remember a run folder under its timestamp, forgetting the folders of the oldest run once too many are kept
+    private void retain(Object timestamp, String name) {
+
+        List<String> names = runs.get(timestamp);
+        if (names == null) {
+            names = new ArrayList<>();
+            runs.put(timestamp, names);
+            if (runs.size() > RETAINED_RUNS) {
+                Iterator<List<String>> oldest = runs.values().iterator();
+                for (String evicted : oldest.next()) {
+                    failed.remove(evicted);
+                    Path evictedFolder = resolved.remove(evicted);
+                    if (evictedFolder != null) {
+                        claims.remove(evictedFolder);
+                    }
+                }
+                oldest.remove();
+            }
+        }
+        names.add(name);
+
+    }
+
+    /**
+     * Take a file name in a run folder, adding a numeric suffix if another report of this writer has it
+     * @param folder the run folder
+     * @param baseName the preferred name without extension
+     * @param extension the file extension, such as ".txt"
+     * @return the name without extension, owned by the caller for the rest of the run
+     */
+    String claim(Path folder, String baseName, String extension) {
+
+        ConcurrentMap<String, Boolean> names = claims.get(folder);
+        if (names == null) {
+            ConcurrentMap<String, Boolean> created = new ConcurrentHashMap<>();
+            names = claims.putIfAbsent(folder, created);
+            if (names == null) {
+                names = created;
+            }
+        }
+
+        String name = baseName;
+        for (int i = 1; names.putIfAbsent(name + extension, Boolean.TRUE) != null; i++) {
+            name = baseName + "-" + i;
+        }
+        return name;
+
+    }
+
+    /**
+     * Give back a file name whose report was not written, so a retry of the report gets the same name
+     * @param folder the result folder
+     * @param name the name without extension, as returned by claim
+     * @param extension the file extension it was claimed with
+     */
+    void release(Path folder, String name, String extension) {
+        ConcurrentMap<String, Boolean> names = claims.get(folder);
+        if (names != null) {
+            names.remove(name + extension);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+/**
+ * The ResultQueue interface is implemented by the pipelines that write results off the calling test thread
+ */
+interface ResultQueue {
+
+    /**
+     * Accept a result for writing
+     * @param pending the result to write
+     */
+    void submit(PendingResult pending);
+
+    /**
+     * Write every accepted result and release the threads
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    void shutdown() throws InterruptedException;
+
+    /**
+     * @return the number of results accepted but not yet written
+     */
+    int getQueueDepth();
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The RunArchive class appends every report of a run to size-capped segment files and records where each one starts in an index file
+ *
+ * With compression each report is a separate member of the segment, so whole segments still decompress with standard tools
+ */
+class RunArchive {
+
+    static final String INDEX_FILE = "results.idx";
+    static final String PASSED = "PASSED";
+    static final String FAILED = "FAILED";
+
+    private static final int INDEX_FLUSH_INTERVAL = 64;
+
+    private final Path folder;
+    private final ReportFiles files;
+    private final long segmentSize;
+
+    private final BufferedWriter index;
+    private FileChannel segment;
+    private String segmentName;
+    private int segmentNumber = 0;
+    private int unflushedEntries = 0;
+
+    /**
+     * @param folder the run's result folder
+     * @param files supplies the charset and durability policy
+     * @param segmentSize the size in bytes after which a new segment file is started, 0 for a single file
+     * @throws IOException if the index or first segment cannot be opened
+     */
+    RunArchive(Path folder, ReportFiles files, long segmentSize) throws IOException {
+        this.folder = folder;
+        this.files = files;
+        this.segmentSize = segmentSize;
+        this.index = Files.newBufferedWriter(folder.resolve(INDEX_FILE), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        //Carry on after the reports already archived in the folder, such as results written after a close or before a restart
+        while (Files.exists(folder.resolve(segmentFileName(segmentNumber + 1)))) {
+            segmentNumber++;
+        }
+        openSegment();
+    }
+
+    /**
+     * Render a report onto the end of the current segment and index it
+     * @param testName the test name the report is indexed under
+     * @param passed whether the test passed
+     * @param content the report
+     * @param sidecars opens the sibling files for oversized bodies
+     * @return where the report was written
+     * @throws IOException if the report cannot be written
+     */
+    synchronized ReportLocation append(String testName, boolean passed, ReportContent content, SidecarTarget sidecars) throws IOException {
+
+        //Render straight onto the end of the segment, through the codec if there is one
+        long offset = segment.position();
+        long length;
+        ReportBuffer buffer = null;
+        try {
+
+            WritableByteChannel output = files.compress(new SegmentView());
+            buffer = ReportBuffer.forChannel(output, files.getCharset());
+            content.writeTo(buffer, sidecars);
+            buffer.close();
+            buffer = null;
+            output.close();
+            length = segment.position() - offset;
+
+            //Separate plain text reports so the segment stays readable on its own
+            if (files.getCompression() == Compression.NONE) {
+                buffer = ReportBuffer.forChannel(new SegmentView(), files.getCharset());
+                buffer.write(ReportRenderer.LINE_SEPARATOR);
+                buffer.close();
+                buffer = null;
+            }
+            if (files.getDurability() == Durability.FILE) {
+                segment.force(false);
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            //Cut off the part of a failed report that reached the segment, so the next report starts where this one did
+            releaseQuietly(buffer);
+            segment.truncate(offset);
+            segment.position(offset);
+            throw e;
+
+        }
+
+        //Index entry: name, status, segment, offset, length
+        index.write(testName);
+        index.write('\t');
+        index.write(passed ? PASSED : FAILED);
+        index.write('\t');
+        index.write(segmentName);
+        index.write('\t');
+        index.write(Long.toString(offset));
+        index.write('\t');
+        index.write(Long.toString(length));
+        index.write('\n');
+        if (++unflushedEntries >= INDEX_FLUSH_INTERVAL) {
+            index.flush();
+            unflushedEntries = 0;
+        }
+
+        //Start the next segment once this one reaches its cap
+        ReportLocation location = new ReportLocation(segmentName, offset, length);
+        if (segmentSize > 0 && segment.position() >= segmentSize) {
+            closeSegment();
+            openSegment();
+        }
+        return location;
+
+    }
+
+    /**
+     * Flush the index and close the current segment
+     * @throws IOException if either cannot be written
+     */
+    synchronized void close() throws IOException {
+        try {
+            index.close();
+            if (files.getDurability() == Durability.RUN) {
+                files.syncLater(folder.resolve(INDEX_FILE));
+            }
+        } finally {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Read one report back out of an archived run
+     * @param folder the run's result folder
+     * @param testName the test name the report is indexed under
+     * @param charset the charset the archive was written with
+     * @return the report, or null if the test is not in the index
+     * @throws IOException if the index or segment cannot be read
+     */
+    static String read(Path folder, String testName, Charset charset) throws IOException {
+
+        //The last entry wins if a test was written more than once
+        String[] entry = null;
+        try (BufferedReader reader = Files.newBufferedReader(folder.resolve(INDEX_FILE), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 5 && fields[0].equals(testName)) {
+                    entry = fields;
+                }
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(Integer.parseInt(entry[4]));
+        try (FileChannel channel = FileChannel.open(folder.resolve(entry[2]), StandardOpenOption.READ)) {
+            long position = Long.parseLong(entry[3]);
+            while (bytes.hasRemaining() && channel.read(bytes, position + bytes.position()) >= 0) {
+                continue;
+            }
+        }
+
+        //Decompress the report's member of a compressed segment
+        Compression compression = Compression.forFileName(entry[2]);
+        if (compression != Compression.NONE) {
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            try (InputStream input = compression.unwrap(new ByteArrayInputStream(bytes.array()))) {
+                byte[] chunk = new byte[8192];
+                int count;
+                while ((count = input.read(chunk)) >= 0) {
+                    decompressed.write(chunk, 0, count);
+                }
+            }
+            bytes = ByteBuffer.wrap(decompressed.toByteArray());
+        } else {
+            bytes.flip();
+        }
+        return charset.decode(bytes).toString();
+
+    }
+
+    //Return a buffer left open by a failed report to its pool
+    private static void releaseQuietly(ReportBuffer buffer) {
+        if (buffer != null) {
+            try {
+                buffer.close();
+            } catch (IOException e) {
+                //The report is being discarded
+            }
+        }
+    }
+
+    private String segmentFileName(int number) {
+        return String.format("results-%04d.txt", number) + files.getCompression().getExtension();
+    }
+
+    //Open the next segment, appending to it if it already exists and starting another if it is already full
+    private void openSegment() throws IOException {
+        segmentName = segmentFileName(segmentNumber++);
+        segment = FileChannel.open(folder.resolve(segmentName), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        segment.position(segment.size());
+        if (segmentSize > 0 && segment.position() >= segmentSize) {
+            segment.close();
+            openSegment();
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        segment.close();
+        if (files.getDurability() == Durability.RUN) {
+            files.syncLater(folder.resolve(segmentName));
+        }
+    }
+
+    //The open segment, which the codec may close without closing the segment itself
+    private class SegmentView implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            long start = System.nanoTime();
+            int count = segment.write(source);
+            IoTotals.record(count, System.nanoTime() - start);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return segment.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.Request;
+import org.codice.testify.objects.Response;
+import org.codice.testify.objects.Result;
+import org.codice.testify.objects.TestData;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * The RunSummary class appends one tab-separated line per written report to the summary file of a run
+ *
+ * Tabs, line breaks and backslashes in values are escaped with a backslash, as are the ';' and '=' separating assertion results
+ */
+class RunSummary {
+
+    static final String SUMMARY_FILE = "summary.tsv";
+    static final String HEADER = "test\tstatus\tendpoint\tresponseCode\tassertions\tfile\toffset\tlength\twrittenAt";
+
+    private static final int FLUSH_INTERVAL = 64;
+
+    private final Path file;
+    private final ReportFiles files;
+    private final BufferedWriter writer;
+    private int unflushedLines = 0;
+
+    /**
+     * @param folder the run's result folder
+     * @param files supplies the durability policy
+     * @throws IOException if the summary file cannot be opened
+     */
+    RunSummary(Path folder, ReportFiles files) throws IOException {
+        this.file = folder.resolve(SUMMARY_FILE);
+        this.files = files;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        //A summary opened again, after a close or a restart with the same timestamp, continues below its header
+        if (Files.size(file) == 0) {
+            writer.write(HEADER);
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Add the line of a written report, writing lines out in batches
+     * @param testData the test that was run
+     * @param response the response received by the test
+     * @param result the assertion results of the test
+     * @param location where the report was written
+     * @param writtenAt when the report was written, in milliseconds since the epoch
+     * @throws IOException if the summary cannot be written
+     */
+    synchronized void append(TestData testData, Response response, Result result, ReportLocation location, long writtenAt) throws IOException {
+
+        Request request = testData.getParsedData().getRequest();
+        writeEscaped(testData.getTestName(), false);
+        writer.write('\t');
+        writer.write(result.getTestResult() ? RunArchive.PASSED : RunArchive.FAILED);
+        writer.write('\t');
+        writeEscaped(request.getEndpoint(), false);
+        writer.write('\t');
+        if (response.getResponseCode() != -1) {
+            writer.write(Integer.toString(response.getResponseCode()));
+        }
+        writer.write('\t');
+        boolean first = true;
+        for (Map.Entry<String, String> assertion : result.getAssertionResults().entrySet()) {
+            if (!first) {
+                writer.write(';');
+            }
+            writeEscaped(assertion.getKey(), true);
+            writer.write('=');
+            writeEscaped(assertion.getValue(), true);
+            first = false;
+        }
+        writer.write('\t');
+        writeEscaped(location.getFileName(), false);
+        writer.write('\t');
+        writer.write(Long.toString(location.getOffset()));
+        writer.write('\t');
+        writer.write(Long.toString(location.getLength()));
+        writer.write('\t');
+        writer.write(Long.toString(writtenAt));
+        writer.write('\n');
+
+        if (++unflushedLines >= FLUSH_INTERVAL) {
+            writer.flush();
+            unflushedLines = 0;
+        }
+
+    }
+
+    /**
+     * Write the remaining lines and close the summary file
+     * @throws IOException if the summary cannot be written
+     */
+    synchronized void close() throws IOException {
+        writer.close();
+        if (files.getDurability() == Durability.RUN) {
+            files.syncLater(file);
+        }
+    }
+
+    private void writeEscaped(String value, boolean assertionPart) throws IOException {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case ';':
+                case '=':
+                    if (assertionPart) {
+                        writer.write('\\');
+                    }
+                    writer.write(c);
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+    }
+}
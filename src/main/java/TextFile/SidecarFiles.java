@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The SidecarFiles class creates the sibling files of one report next to its result file under names claimed for the run, and deletes them again if the report is not written
+ */
+class SidecarFiles implements SidecarTarget {
+
+    private final ResultDirectories directories;
+    private final ReportFiles files;
+    private final Path folder;
+    private final String reportName;
+
+    //Every sibling file opened for the report by suffix, published or not
+    private final Map<String, ReportChannel> opened = new HashMap<>();
+
+    /**
+     * @param directories hands out the sibling file names, so they cannot collide with those of another report
+     * @param files opens the sibling files
+     * @param folder the result folder of the report
+     * @param reportName the report name without extension
+     */
+    SidecarFiles(ResultDirectories directories, ReportFiles files, Path folder, String reportName) {
+        this.directories = directories;
+        this.files = files;
+        this.folder = folder;
+        this.reportName = reportName;
+    }
+
+    @Override
+    public String name(String suffix) {
+        ReportChannel channel = opened.get(suffix);
+        return channel != null ? channel.getFile().getFileName().toString() : reportName + stem(suffix) + extension(suffix);
+    }
+
+    @Override
+    public Writer open(String suffix) throws IOException {
+        final String stem = reportName + stem(suffix);
+        final String extension = extension(suffix);
+        String name = directories.claim(folder, stem, extension);
+        ReportChannel channel;
+        try {
+            channel = files.open(folder.resolve(name + extension), 0, new ReportChannel.NextName() {
+                @Override
+                public Path next() {
+                    return folder.resolve(directories.claim(folder, stem, extension) + extension);
+                }
+            });
+        } catch (IOException e) {
+            directories.release(folder, name, extension);
+            throw e;
+        }
+        opened.put(suffix, channel);
+        return ReportBuffer.standalone(files.compress(channel), files.getCharset());
+    }
+
+    @Override
+    public void discard() {
+        for (Map.Entry<String, ReportChannel> sidecar : opened.entrySet()) {
+            sidecar.getValue().abort();
+            String fileName = sidecar.getValue().getFile().getFileName().toString();
+            String extension = extension(sidecar.getKey());
+            directories.release(folder, fileName.substring(0, fileName.length() - extension.length()), extension);
+        }
+        opened.clear();
+    }
+
+    //The part of a suffix before its file extension, such as "-attachments" of "-attachments.body"
+    private static String stem(String suffix) {
+        int dot = suffix.lastIndexOf('.');
+        return dot >= 0 ? suffix.substring(0, dot) : suffix;
+    }
+
+    //The file extension of a suffix followed by that of the codec, such as ".body.gz"
+    private String extension(String suffix) {
+        int dot = suffix.lastIndexOf('.');
+        return (dot >= 0 ? suffix.substring(dot) : "") + files.getCompression().getExtension();
+    }
+}
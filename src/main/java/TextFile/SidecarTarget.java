@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The SidecarTarget interface opens the sibling files that oversized bodies are moved into
+ */
+interface SidecarTarget {
+
+    /**
+     * Get the name of a sibling file, as referenced from the report
+     * @param suffix the suffix added to the report name, such as ".body"
+     * @return the file name
+     */
+    String name(String suffix);
+
+    /**
+     * Open a sibling file for writing
+     * @param suffix the suffix added to the report name, such as ".body"
+     * @return a writer the caller closes once the body is complete, which publishes the file
+     * @throws IOException if the file cannot be created
+     */
+    Writer open(String suffix) throws IOException;
+
+    /**
+     * Delete every sibling file opened so far, including incomplete ones that were never closed
+     */
+    void discard();
+}
@@ -20,97 +20,387 @@ import org.codice.testify.objects.*;
 import org.codice.testify.writers.Writer;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The TextFileWriter class is a Testify Writer service to create text files from the test results
  */
 public class TextFileWriter implements BundleActivator, Writer {
 
+    private final WriterSettings settings;
+    private final ReportRenderer renderer;
+    private final ReportFiles files;
+    private final ResultDirectories directories = new ResultDirectories();
+    private final TextFileWriterMetrics metrics = new TextFileWriterMetrics();
+    private final ResultQueue queue;
+
+    //Reports waiting to be retried, null when retries are off
+    private final ReportSpill spill;
+
+    //Open run archives by result folder, used in archive output mode
+    private final ConcurrentMap<Path, RunArchive> archives = new ConcurrentHashMap<>();
+
+    //Open run summaries by result folder
+    private final ConcurrentMap<Path, RunSummary> summaries = new ConcurrentHashMap<>();
+
+    //Report digests by result folder, used in dedup verbosity
+    private final ConcurrentMap<String, ReportDigests> digests = new ConcurrentHashMap<>();
+
+    //The writer service registered by this bundle activator
+    private TextFileWriter service;
+
+    public TextFileWriter() {
+        this(new WriterSettings());
+    }
+
+    TextFileWriter(WriterSettings settings) {
+        this.settings = settings;
+        this.renderer = new ReportRenderer(settings.template, settings.summaryTemplate, settings.bodyLimit, settings.bodyOverflow);
+        this.files = new ReportFiles(settings.charset, settings.durability, settings.mapThreshold, settings.compression, settings.compressionLevel, settings.channelWrapper);
+        this.spill = settings.retryAttempts > 0 ? new ReportSpill(this, settings) : null;
+        this.queue = newQueue(settings);
+        metrics.setQueue(queue);
+    }
+
     @Override
     public void writeResults(TestData testData, Response response, Result result) {
 
         TestifyLogger.debug("Running TextFileWriter", this.getClass().getSimpleName());
 
-        //Set test status for file header and file name
-        String testStatus = "Success";
-        String resultString = "";
-        if (!result.getTestResult()) {
-            testStatus = "Failed (See assertion results below)";
-            resultString = "-FAILED";
+        //Hand the result to the executor or writer threads when configured, otherwise write it now
+        PendingResult pending = new PendingResult(testData, response, result, AllObjects.getObject("timestamp"));
+        if (queue != null) {
+            queue.submit(pending);
+        } else {
+            writeReport(pending);
         }
 
-        //Format assertion results string for text file
-        String assertionResults = "";
-        for (String assertion : result.getAssertionResults().keySet()) {
-            assertionResults = assertionResults + System.lineSeparator() + "Assertion: " + assertion + " Result: " + result.getAssertionResults().get(assertion);
-        }
+    }
 
-        //Set text of the result body
-        String resultBody = "Results for test: " + testData.getTestName() + " --------- " + testStatus + System.lineSeparator() + System.lineSeparator() +
-                "Endpoint: " + testData.getParsedData().getRequest().getEndpoint() + System.lineSeparator() + System.lineSeparator() +
-                "Test: " + testData.getParsedData().getRequest().getTestBlock() + System.lineSeparator() + System.lineSeparator() +
-                "Assertion Results: " + assertionResults + System.lineSeparator() + System.lineSeparator() +
-                "Response: " + response.getResponse();
+    /**
+     * Write all pending results, give spilled reports a last attempt, release the writer threads and sync the run's files if configured
+     */
+    void close() {
+        try {
+            if (queue != null) {
+                queue.shutdown();
+            }
+            if (spill != null) {
+                spill.shutdown();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (RunArchive archive : archives.values()) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                TestifyLogger.error(e.getMessage(), this.getClass().getSimpleName());
+            }
+        }
+        archives.clear();
+        for (RunSummary summary : summaries.values()) {
+            try {
+                summary.close();
+            } catch (IOException e) {
+                TestifyLogger.error(e.getMessage(), this.getClass().getSimpleName());
+            }
+        }
+        summaries.clear();
+        for (ReportDigests reportDigests : digests.values()) {
+            try {
+                reportDigests.save();
+            } catch (IOException e) {
+                TestifyLogger.error(e.getMessage(), this.getClass().getSimpleName());
+            }
+        }
+        digests.clear();
+        files.sync();
+        if (settings.logSummary) {
+            TestifyLogger.info(metrics.getSummary(), this.getClass().getSimpleName());
+        }
+    }
 
-        //Add Response Code to text if it exists
-        if (response.getResponseCode() != -1) {
-            resultBody = resultBody + System.lineSeparator() + "Response Code: " + response.getResponseCode();
+    private ResultQueue newQueue(WriterSettings settings) {
+        if (settings.executor != ExecutorMode.NONE) {
+            return new DirectoryExecutor(this, settings);
         }
+        if (settings.async) {
+            return new AsyncResultWriter(this, settings);
+        }
+        return null;
+    }
+
+    TextFileWriterMetrics getMetrics() {
+        return metrics;
+    }
 
-        //Add Response Headers to text if they exist
-        if (response.getResponseHeaders() != null) {
-            resultBody = resultBody + System.lineSeparator() + "Response Headers: " + response.getResponseHeaders();
+    /**
+     * Render a result and write it to its result file, spilling it for a later retry if that fails and retries are enabled
+     * @param pending the result to write
+     */
+    void writeReport(PendingResult pending) {
+        if (!write(pending, false)) {
+            if (spill != null) {
+                spill.add(pending);
+            } else {
+                metrics.recordLost();
+            }
         }
+    }
 
-        //Add Response Attachments to text if they exist
-        if (response.getResponseAttachments() != null) {
-            resultBody = resultBody + System.lineSeparator() + "Response Attachments: " + response.getResponseAttachments();
+    /**
+     * Write a spilled result again, trying to create its result folder even if that failed before
+     * @param pending the result to write
+     * @return whether the report was written
+     */
+    boolean retryReport(PendingResult pending) {
+        return write(pending, true);
+    }
+
+    //Render a result and write it to its result file, returning whether it was written
+    private boolean write(PendingResult pending, boolean retry) {
+
+        TestData testData = pending.getTestData();
+        Response response = pending.getResponse();
+        Result result = pending.getResult();
+
+        //Set the file name suffix for failed tests
+        String resultString = "";
+        if (!result.getTestResult()) {
+            resultString = "-FAILED";
         }
 
-        BufferedWriter writer = null;
+        long start = System.nanoTime();
+        long startBytes = 0;
+        long startIoNanos = 0;
+        long fileNanos = 0;
+        boolean written = false;
+        final String extension = ".txt" + files.getCompression().getExtension();
+        Path claimedFolder = null;
+        String claimedName = null;
+        SidecarFiles sidecars = null;
+
+        ReportChannel channel = null;
         try {
 
-            //Create a result file
-            String testName = testData.getTestName().substring(0, testData.getTestName().lastIndexOf("."));
-            File resultFile = new File( testData.getResultFolder() + "_" + AllObjects.getObject("timestamp"));
-            resultFile.mkdirs();
-            resultFile = new File( resultFile,  testName + resultString + ".txt" );
+            //Take a report name in the run's result folder that no other writer of this run uses
+            final String testName = testData.getTestName().substring(0, testData.getTestName().lastIndexOf("."));
+            final Path resultFolder = retry ? directories.retry(testData.getResultFolder(), pending.getTimestamp())
+                    : directories.resolve(testData.getResultFolder(), pending.getTimestamp());
+            if (resultFolder == null) {
+                return false;
+            }
+            final String baseName = testName + resultString;
+            final String reportName = directories.claim(resultFolder, baseName, extension);
+            claimedFolder = resultFolder;
+            claimedName = reportName;
 
-            //Write the results to the result file
-            writer = new BufferedWriter(new FileWriter(resultFile));
-            writer.write(resultBody);
+            //Oversized bodies may be moved into sibling files next to the result file
+            sidecars = new SidecarFiles(directories, files, resultFolder, reportName);
 
+            //Choose how much of the report to write
+            ReportContent content = fullReport(pending);
+            long expectedSize = expectedSize(response);
+            ReportDigests digests = null;
+            String digest = null;
+            if (settings.verbosity == Verbosity.FAILURES && result.getTestResult()) {
+                content = headerOnly(pending);
+                expectedSize = 0;
+            } else if (settings.verbosity == Verbosity.DEDUP) {
+                digests = getDigests(testData.getResultFolder());
+                digest = ReportDigests.digest(content, files.getCharset());
+                String unchangedSince = digests.unchangedSince(reportName, digest);
+                if (unchangedSince != null) {
+                    content = reference(pending, unchangedSince);
+                    expectedSize = 0;
+                    digest = null;
+                }
+            }
+
+            //Time spent writing to this thread's files counts as I/O, the rest, compression included, as rendering
+            startBytes = IoTotals.threadBytes();
+            startIoNanos = IoTotals.threadNanos();
+
+            ReportLocation location;
+            if (settings.output == OutputMode.ARCHIVE) {
+
+                //Append the report to the run archive in archive mode
+                location = getArchive(resultFolder).append(testName, result.getTestResult(), content, sidecars);
+
+            } else {
+
+                //Stream the report through a pooled buffer and the codec into a temporary file, then move it into place
+                long openStart = System.nanoTime();
+                channel = files.open(resultFolder.resolve(reportName + extension), expectedSize, new ReportChannel.NextName() {
+                    @Override
+                    public Path next() {
+                        return resultFolder.resolve(directories.claim(resultFolder, baseName, extension) + extension);
+                    }
+                });
+                WritableByteChannel output = files.compress(channel);
+                fileNanos += System.nanoTime() - openStart;
+                ReportBuffer buffer = ReportBuffer.forChannel(output, files.getCharset());
+                content.writeTo(buffer, sidecars);
+                buffer.close();
+                long closeStart = System.nanoTime();
+                output.close();
+                channel.close();
+                fileNanos += System.nanoTime() - closeStart;
+                location = new ReportLocation(channel.getFile().getFileName().toString(), 0, channel.getSize());
+                channel = null;
+
+            }
+            written = true;
+
+            //Record the report in the run summary
+            if (settings.summary) {
+                getSummary(resultFolder).append(testData, response, result, location, System.currentTimeMillis());
+            }
+
+            //Later runs can refer back to this full report while it stays the same
+            if (digest != null) {
+                digests.record(reportName, digest, resultFolder.getFileName().toString());
+            }
 
         } catch (IOException e) {
             TestifyLogger.error(e.getMessage(), this.getClass().getSimpleName());
         } finally {
-            try {
 
-                //Close the writer regardless of earlier results
-                if (writer != null) {
-                    writer.close();
+            //Discard a report that was not completed
+            if (channel != null) {
+                channel.abort();
+            }
+
+            //Remove the sibling files of a report that was not written
+            if (!written && sidecars != null) {
+                sidecars.discard();
+            }
+
+            if (written) {
+                long ioNanos = IoTotals.threadNanos() - startIoNanos + fileNanos;
+                metrics.recordWrite(IoTotals.threadBytes() - startBytes, System.nanoTime() - start - ioNanos, ioNanos);
+            } else {
+                if (claimedName != null) {
+                    directories.release(claimedFolder, claimedName, extension);
                 }
+                metrics.recordFailure();
+            }
 
-            } catch (IOException e) {
-                TestifyLogger.error(e.getMessage(), this.getClass().getSimpleName());
+        }
+        return written;
+    }
+
+    //The full report of a result
+    private ReportContent fullReport(final PendingResult pending) {
+        return new ReportContent() {
+            @Override
+            public void writeTo(java.io.Writer out, SidecarTarget sidecars) throws IOException {
+                renderer.render(pending.getTestData(), pending.getResponse(), pending.getResult(), out, sidecars);
+            }
+        };
+    }
+
+    //Only the header line of a result
+    private ReportContent headerOnly(final PendingResult pending) {
+        return new ReportContent() {
+            @Override
+            public void writeTo(java.io.Writer out, SidecarTarget sidecars) throws IOException {
+                renderer.renderHeader(pending.getTestData(), pending.getResponse(), pending.getResult(), out);
+            }
+        };
+    }
+
+    //The header line of a result pointing to the run that holds its identical full report
+    private ReportContent reference(final PendingResult pending, final String runFolder) {
+        return new ReportContent() {
+            @Override
+            public void writeTo(java.io.Writer out, SidecarTarget sidecars) throws IOException {
+                renderer.renderReference(pending.getTestData(), pending.getResponse(), pending.getResult(), runFolder, out);
+            }
+        };
+    }
+
+    //Get the summary of a result folder, creating it on first use
+    private RunSummary getSummary(Path resultFolder) throws IOException {
+        RunSummary summary = summaries.get(resultFolder);
+        if (summary == null) {
+            synchronized (summaries) {
+                summary = summaries.get(resultFolder);
+                if (summary == null) {
+                    summary = new RunSummary(resultFolder, files);
+                    summaries.put(resultFolder, summary);
+                }
+            }
+        }
+        return summary;
+    }
+
+    //Get the report digests of a result folder, loading them on first use
+    private ReportDigests getDigests(String resultFolder) throws IOException {
+        ReportDigests reportDigests = digests.get(resultFolder);
+        if (reportDigests == null) {
+            synchronized (digests) {
+                reportDigests = digests.get(resultFolder);
+                if (reportDigests == null) {
+                    reportDigests = ReportDigests.load(Paths.get(resultFolder + ReportDigests.SUFFIX));
+                    digests.put(resultFolder, reportDigests);
+                }
             }
         }
+        return reportDigests;
+    }
+
+    //Get the archive of a result folder, creating it on first use
+    private RunArchive getArchive(Path resultFolder) throws IOException {
+        RunArchive archive = archives.get(resultFolder);
+        if (archive == null) {
+            synchronized (archives) {
+                archive = archives.get(resultFolder);
+                if (archive == null) {
+                    archive = new RunArchive(resultFolder, files, settings.segmentSize);
+                    archives.put(resultFolder, archive);
+                }
+            }
+        }
+        return archive;
+    }
+
+    //Estimate the size of a report from its largest parts
+    private static long expectedSize(Response response) {
+        long size = 0;
+        if (response.getResponse() != null) {
+            size += response.getResponse().length();
+        }
+        if (response.getResponseAttachments() != null) {
+            size += response.getResponseAttachments().length();
+        }
+        return size;
     }
 
     @Override
     public void start(BundleContext bundleContext) throws Exception {
 
-        //Register the Contains service
-        bundleContext.registerService(Writer.class.getName(), new TextFileWriter(), null);
+        //Register the TextFileWriter service and its metrics
+        service = new TextFileWriter(WriterSettings.fromContext(bundleContext));
+        bundleContext.registerService(Writer.class.getName(), service, null);
+        bundleContext.registerService(TextFileWriterMetrics.class.getName(), service.getMetrics(), null);
 
     }
 
     @Override
     public void stop(BundleContext bundleContext) throws Exception {
 
+        //Wait for queued results so none are lost on shutdown
+        if (service != null) {
+            service.close();
+            service = null;
+        }
+
     }
 }
\ No newline at end of file
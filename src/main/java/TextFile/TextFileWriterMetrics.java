@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The TextFileWriterMetrics class counts what the TextFileWriter has written and how long it took, and is registered as an OSGi service next to the writer
+ */
+public class TextFileWriterMetrics {
+
+    //Histogram bucket i counts values from 2^i up to 2^(i+1)
+    static final int BUCKETS = 40;
+
+    private final AtomicLong filesWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong droppedResults = new AtomicLong();
+    private final AtomicLong lostReports = new AtomicLong();
+    private final AtomicLong renderNanos = new AtomicLong();
+    private final AtomicLong ioNanos = new AtomicLong();
+    private final AtomicLongArray writeMicros = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray reportBytes = new AtomicLongArray(BUCKETS);
+
+    private volatile ResultQueue queue;
+
+    /**
+     * @return the number of reports written
+     */
+    public long getFilesWritten() {
+        return filesWritten.get();
+    }
+
+    /**
+     * @return the number of bytes written to result files, after compression
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the number of write attempts that failed, including attempts that were retried later
+     */
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    /**
+     * @return the number of results discarded by a full asynchronous queue
+     */
+    public long getDroppedResults() {
+        return droppedResults.get();
+    }
+
+    /**
+     * @return the number of reports given up on after failing, whether not retried, out of retries or pushed out of a full spill buffer
+     */
+    public long getLostReports() {
+        return lostReports.get();
+    }
+
+    /**
+     * @return the total time spent rendering and compressing reports, in nanoseconds
+     */
+    public long getRenderNanos() {
+        return renderNanos.get();
+    }
+
+    /**
+     * @return the total time spent opening, writing and closing result files, in nanoseconds
+     */
+    public long getIoNanos() {
+        return ioNanos.get();
+    }
+
+    /**
+     * @return the number of results waiting in the asynchronous queue or executor, 0 when writing synchronously
+     */
+    public int getQueueDepth() {
+        ResultQueue current = queue;
+        return current == null ? 0 : current.getQueueDepth();
+    }
+
+    /**
+     * @return counts of report write times, where entry i counts writes that took from 2^i up to 2^(i+1) microseconds
+     */
+    public long[] getWriteTimeHistogram() {
+        return snapshot(writeMicros);
+    }
+
+    /**
+     * @return counts of report sizes on disk, where entry i counts reports from 2^i up to 2^(i+1) bytes
+     */
+    public long[] getReportSizeHistogram() {
+        return snapshot(reportBytes);
+    }
+
+    /**
+     * @return a one-line summary of the counters
+     */
+    public String getSummary() {
+        return "TextFileWriter wrote " + getFilesWritten() + " reports, " + getBytesWritten() + " bytes, "
+                + getFailedWrites() + " failed, " + getLostReports() + " lost, " + getDroppedResults() + " dropped; render "
+                + TimeUnit.NANOSECONDS.toMillis(getRenderNanos()) + " ms, I/O " + TimeUnit.NANOSECONDS.toMillis(getIoNanos()) + " ms";
+    }
+
+    void recordWrite(long bytes, long renderTime, long ioTime) {
+        filesWritten.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+        renderNanos.addAndGet(renderTime);
+        ioNanos.addAndGet(ioTime);
+        writeMicros.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(renderTime + ioTime)));
+        reportBytes.incrementAndGet(bucket(bytes));
+    }
+
+    void recordFailure() {
+        failedWrites.incrementAndGet();
+    }
+
+    void recordLost() {
+        lostReports.incrementAndGet();
+    }
+
+    void recordDropped() {
+        droppedResults.incrementAndGet();
+    }
+
+    void setQueue(ResultQueue queue) {
+        this.queue = queue;
+    }
+
+    private static int bucket(long value) {
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, value)));
+    }
+
+    private static long[] snapshot(AtomicLongArray histogram) {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+}
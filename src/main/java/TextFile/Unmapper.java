@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * The Unmapper class releases memory-mapped windows as soon as they are written instead of when they are garbage collected,
+ * through the JDK internals of the running JVM, looked up reflectively
+ */
+final class Unmapper {
+
+    //Unsafe.invokeCleaner on Java 9 and later
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    //DirectBuffer.cleaner().clean() on Java 7 and 8
+    private static final Method CLEANER;
+    private static final Method CLEAN;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (ReflectiveOperationException | RuntimeException e2) {
+                cleaner = null;
+                clean = null;
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    private Unmapper() {
+    }
+
+    /**
+     * @return whether mapped windows can be released on this JVM, without which reports are never mapped
+     */
+    static boolean isSupported() {
+        return INVOKE_CLEANER != null || CLEAN != null;
+    }
+
+    /**
+     * Release a mapping, after which the buffer must not be used again
+     * @param buffer the mapped window
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else if (CLEAN != null) {
+                Object cleaner = CLEANER.invoke(buffer);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //Left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+/**
+ * The Verbosity enum lists how much of each report is written
+ */
+enum Verbosity {
+
+    //The full report for every test
+    FULL,
+
+    //The full report for failed tests and only the header line for passed tests
+    FAILURES,
+
+    //The full report unless it is identical to the previous run's, in which case a line pointing to that run
+    DEDUP
+}
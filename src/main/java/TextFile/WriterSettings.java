@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.TestifyLogger;
+import org.osgi.framework.BundleContext;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * The WriterSettings class holds the TextFileWriter options, read from framework or system properties prefixed with "textfilewriter."
+ */
+class WriterSettings {
+
+    static final String PREFIX = "textfilewriter.";
+
+    //Asynchronous write pipeline
+    boolean async = false;
+    int queueCapacity = 1024;
+    int batchSize = 64;
+    int writerThreads = 1;
+    Backpressure backpressure = Backpressure.BLOCK;
+
+    //Parallel write executor, ordered within each result folder
+    ExecutorMode executor = ExecutorMode.NONE;
+    int executorThreads = 2 * Runtime.getRuntime().availableProcessors();
+    int executorMaxPending = 1024;
+
+    //Retries of failed writes from a bounded spill buffer, off when attempts is 0
+    int retryAttempts = 0;
+    long retryBackoff = 100;
+    long retryMaxBackoff = 5000;
+    int spillCapacity = 1024;
+
+    //Response and attachment size cap, 0 for no limit
+    long bodyLimit = 0;
+    BodyOverflow bodyOverflow = BodyOverflow.TRUNCATE;
+
+    //File channel output
+    Charset charset = StandardCharsets.UTF_8;
+    Durability durability = Durability.NONE;
+    long mapThreshold = 0;
+    Compression compression = Compression.NONE;
+    int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    //Wraps the channels files are written to, set in code rather than from properties, null for none
+    ChannelWrapper channelWrapper = null;
+
+    //Result folder layout
+    OutputMode output = OutputMode.FILES;
+    long segmentSize = 0;
+
+    //Report layouts
+    ReportTemplate template = ReportTemplate.DEFAULT;
+    ReportTemplate summaryTemplate = ReportTemplate.DEFAULT_SUMMARY;
+
+    //Write summary.tsv with one line per report
+    boolean summary = false;
+
+    //How much of each report is written
+    Verbosity verbosity = Verbosity.FULL;
+
+    //Log the metrics summary when the bundle stops
+    boolean logSummary = false;
+
+    /**
+     * Read the settings from the bundle context, keeping the default for any property that is not set
+     * @param bundleContext the context of the starting bundle
+     * @return the populated settings
+     */
+    static WriterSettings fromContext(BundleContext bundleContext) {
+
+        WriterSettings settings = new WriterSettings();
+        settings.async = getBoolean(bundleContext, "async", settings.async);
+        settings.queueCapacity = getInt(bundleContext, "async.queueCapacity", settings.queueCapacity);
+        settings.batchSize = getInt(bundleContext, "async.batchSize", settings.batchSize);
+        settings.writerThreads = getInt(bundleContext, "async.threads", settings.writerThreads);
+        settings.backpressure = getEnum(bundleContext, "async.backpressure", settings.backpressure);
+        settings.executor = getEnum(bundleContext, "executor", settings.executor);
+        settings.executorThreads = getInt(bundleContext, "executor.threads", settings.executorThreads);
+        settings.executorMaxPending = getInt(bundleContext, "executor.maxPending", settings.executorMaxPending);
+        settings.retryAttempts = getInt(bundleContext, "retry.attempts", settings.retryAttempts);
+        settings.retryBackoff = getLong(bundleContext, "retry.backoff", settings.retryBackoff);
+        settings.retryMaxBackoff = getLong(bundleContext, "retry.maxBackoff", settings.retryMaxBackoff);
+        settings.spillCapacity = getInt(bundleContext, "spill.capacity", settings.spillCapacity);
+        settings.bodyLimit = getLong(bundleContext, "body.limit", settings.bodyLimit);
+        settings.bodyOverflow = getEnum(bundleContext, "body.overflow", settings.bodyOverflow);
+        settings.charset = getCharset(bundleContext, "charset", settings.charset);
+        settings.durability = getEnum(bundleContext, "durability", settings.durability);
+        settings.mapThreshold = getLong(bundleContext, "mmap.threshold", settings.mapThreshold);
+        settings.compression = getEnum(bundleContext, "compression", settings.compression);
+        settings.compressionLevel = getInt(bundleContext, "compression.level", settings.compressionLevel);
+        if (settings.compressionLevel < Deflater.DEFAULT_COMPRESSION || settings.compressionLevel > Deflater.BEST_COMPRESSION) {
+            TestifyLogger.error("Invalid value " + settings.compressionLevel + " for " + PREFIX + "compression.level, using the default", WriterSettings.class.getSimpleName());
+            settings.compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        }
+        settings.output = getEnum(bundleContext, "output", settings.output);
+        settings.segmentSize = getLong(bundleContext, "archive.segmentSize", settings.segmentSize);
+        settings.template = getTemplate(bundleContext, "template", settings.template);
+        settings.summaryTemplate = getTemplate(bundleContext, "template.summary", settings.summaryTemplate);
+        settings.summary = getBoolean(bundleContext, "summary", settings.summary);
+        settings.verbosity = getEnum(bundleContext, "verbosity", settings.verbosity);
+        settings.logSummary = getBoolean(bundleContext, "metrics.summary", settings.logSummary);
+        return settings;
+
+    }
+
+    static String getString(BundleContext bundleContext, String name, String defaultValue) {
+        String value = bundleContext.getProperty(PREFIX + name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    static boolean getBoolean(BundleContext bundleContext, String name, boolean defaultValue) {
+        String value = getString(bundleContext, name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    static int getInt(BundleContext bundleContext, String name, int defaultValue) {
+        return (int) getLong(bundleContext, name, defaultValue);
+    }
+
+    static long getLong(BundleContext bundleContext, String name, long defaultValue) {
+        String value = getString(bundleContext, name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            TestifyLogger.error("Invalid value '" + value + "' for " + PREFIX + name + ", using " + defaultValue, WriterSettings.class.getSimpleName());
+            return defaultValue;
+        }
+    }
+
+    static Charset getCharset(BundleContext bundleContext, String name, Charset defaultValue) {
+        String value = getString(bundleContext, name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Charset.forName(value);
+        } catch (IllegalArgumentException e) {
+            TestifyLogger.error("Invalid value '" + value + "' for " + PREFIX + name + ", using " + defaultValue, WriterSettings.class.getSimpleName());
+            return defaultValue;
+        }
+    }
+
+    //Compile the layout given inline by the property, or read from the file named by the property with ".file" appended
+    static ReportTemplate getTemplate(BundleContext bundleContext, String name, ReportTemplate defaultValue) {
+
+        String layout = getString(bundleContext, name, null);
+        String file = getString(bundleContext, name + ".file", null);
+        try {
+            if (file != null) {
+                layout = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+            }
+            return layout == null ? defaultValue : ReportTemplate.compile(layout);
+        } catch (IOException | IllegalArgumentException e) {
+            TestifyLogger.error("Invalid template for " + PREFIX + name + ", using the default: " + e.getMessage(), WriterSettings.class.getSimpleName());
+            return defaultValue;
+        }
+
+    }
+
+    static <E extends Enum<E>> E getEnum(BundleContext bundleContext, String name, E defaultValue) {
+        String value = getString(bundleContext, name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.toUpperCase(Locale.ENGLISH).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            TestifyLogger.error("Invalid value '" + value + "' for " + PREFIX + name + ", using " + defaultValue, WriterSettings.class.getSimpleName());
+            return defaultValue;
+        }
+    }
+}
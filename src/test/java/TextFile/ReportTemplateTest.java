@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+
+@RunWith(JUnit4.class)
+public class ReportTemplateTest {
+
+    //Set objects
+    private final Request request = new Request("type", "endpoint", "testBlock");
+    private final TestData testData = new TestData("TestFile.xml", new ParsedData(request, null, null), "results");
+    private final LinkedHashMap<String,String> assertionResults = new LinkedHashMap<>();
+    private final Response response = new Response("RESPONSE");
+
+    private String render(String layout, Result result) {
+        ReportRenderer renderer = new ReportRenderer(ReportTemplate.compile(layout), ReportTemplate.DEFAULT_SUMMARY, 0, BodyOverflow.TRUNCATE);
+        StringWriter out = new StringWriter();
+        try {
+            renderer.render(testData, response, result, out, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testFieldsAndLineBreaks() {
+        assertionResults.put("Assertion", "Result");
+        String report = render("${status}: ${testName}\n${endpoint} $$${response}", new Result(false, assertionResults));
+        assert( report.equals("Failed (See assertion results below): TestFile.xml" + System.lineSeparator() + "endpoint $RESPONSE") );
+    }
+
+    @Test
+    public void testOptionalSections() {
+        String layout = "${response}${?code} [${code}]${/code}${?headers} {${headers}}${/headers}";
+        assert( render(layout, new Result(true, assertionResults)).equals("RESPONSE") );
+        response.setResponseCode(500);
+        assert( render(layout, new Result(true, assertionResults)).equals("RESPONSE [500]") );
+    }
+
+    @Test
+    public void testUnknownFieldIsRejected() {
+        boolean rejected = false;
+        try {
+            ReportTemplate.compile("${unknown}");
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assert( rejected );
+    }
+
+    @Test
+    public void testUnmatchedSectionIsRejected() {
+        boolean rejected = false;
+        try {
+            ReportTemplate.compile("${?code}${code}${/headers}");
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assert( rejected );
+    }
+
+}
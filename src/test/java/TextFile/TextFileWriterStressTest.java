@@ -0,0 +1,484 @@
+/*
+ * Copyright 2015 Codice Foundation
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package TextFile;
+
+import org.codice.testify.objects.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stress and soak tests of the TextFileWriter against the local filesystem
+ *
+ * The scale is moderate by default so the suite runs with every build, and can be raised with system properties, for example
+ * mvn test -Dtest=TextFileWriterStressTest -Dstress.soak=true -Dstress.tests=50000 -Dstress.threads=32 -Dstress.responseBytes=8388608
+ *
+ * The heap and throughput limits depend on the machine, so they are only checked in soak runs
+ */
+@RunWith(JUnit4.class)
+public class TextFileWriterStressTest {
+
+    //Scale of the runs
+    private static final int TESTS = Integer.getInteger("stress.tests", 3000);
+    private static final int THREADS = Integer.getInteger("stress.threads", 8);
+    private static final int DISTINCT_NAMES = Integer.getInteger("stress.names", 500);
+    private static final int RESPONSE_BYTES = Integer.getInteger("stress.responseBytes", 2 * 1024 * 1024);
+    private static final int ASSERTIONS = Integer.getInteger("stress.assertions", 2000);
+    private static final int LARGE_REPORTS = Integer.getInteger("stress.largeReports", 16);
+
+    //Limits the runs must stay within, checked when stress.soak is set
+    private static final boolean SOAK = Boolean.getBoolean("stress.soak");
+    private static final int MIN_REPORTS_PER_SECOND = Integer.getInteger("stress.minReportsPerSecond", 100);
+    private static final long MAX_HEAP_GROWTH = Long.getLong("stress.maxHeapGrowthMb", 64L) * 1024 * 1024;
+
+    private final String timeStamp = "TIME STAMP";
+    private final Request request = new Request("type", "endpoint", "testBlock");
+    private final ParsedData parsedData = new ParsedData(request, null, null);
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentSynchronousWrites() throws Exception {
+        writeConcurrently(new WriterSettings());
+    }
+
+    @Test
+    public void testConcurrentAsyncWrites() throws Exception {
+        WriterSettings settings = new WriterSettings();
+        settings.async = true;
+        settings.writerThreads = 4;
+        settings.queueCapacity = 256;
+        writeConcurrently(settings);
+    }
+
+    @Test
+    public void testConcurrentExecutorWrites() throws Exception {
+        WriterSettings settings = new WriterSettings();
+        settings.executor = ExecutorMode.AUTO;
+        settings.executorMaxPending = 256;
+        writeConcurrently(settings);
+    }
+
+    @Test
+    public void testLargeResponsesAndManyAssertionsKeepHeapBounded() throws Exception {
+        AllObjects.setObject("timestamp", timeStamp);
+        String resultFolder = tempFolder.newFolder("large").toString();
+
+        //One large response and assertion set shared by every report, so only the writer's own allocations can grow the heap
+        StringBuilder body = new StringBuilder(RESPONSE_BYTES);
+        while (body.length() < RESPONSE_BYTES) {
+            body.append("0123456789abcdef\u00e9\u4e2d\n");
+        }
+        body.setLength(RESPONSE_BYTES);
+        String responseBody = body.toString();
+        LinkedHashMap<String, String> assertionResults = new LinkedHashMap<>();
+        for (int i = 0; i < ASSERTIONS; i++) {
+            assertionResults.put("Assertion " + i, "Result " + i);
+        }
+        Result result = new Result(false, assertionResults);
+
+        WriterSettings settings = new WriterSettings();
+        settings.mapThreshold = 1024 * 1024;
+        TextFileWriter writer = new TextFileWriter(settings);
+        long heapBefore = SOAK ? usedHeap() : 0;
+        for (int i = 0; i < LARGE_REPORTS; i++) {
+            writer.writeResults(new TestData("Large" + i + ".xml", parsedData, resultFolder), new Response(responseBody), result);
+        }
+        writer.close();
+        long heapGrowth = SOAK ? usedHeap() - heapBefore : 0;
+
+        for (int i = 0; i < LARGE_REPORTS; i++) {
+            File resultFile = new File(resultFolder + "_" + timeStamp + File.separator + "Large" + i + "-FAILED.txt");
+            String report = new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8);
+            assert( report.contains("Assertion: Assertion " + (ASSERTIONS - 1) + " Result: Result " + (ASSERTIONS - 1)) );
+            assert( report.endsWith("Response: " + responseBody) );
+        }
+        assert( writer.getMetrics().getFilesWritten() == LARGE_REPORTS );
+        assert( heapGrowth < MAX_HEAP_GROWTH );
+    }
+
+    @Test
+    public void testUnavailableFolderIsRetriedWithoutLoss() throws Exception {
+        AllObjects.setObject("timestamp", timeStamp);
+
+        //A file in place of the run folder fails every write until it is removed, like a full or unmounted volume
+        File blockingFile = tempFolder.newFile("blocked_" + timeStamp);
+        String resultFolder = new File(tempFolder.getRoot(), "blocked").toString();
+        int tests = Math.min(TESTS, 1000);
+        WriterSettings settings = new WriterSettings();
+        settings.retryAttempts = 1000;
+        settings.retryBackoff = 5;
+        settings.retryMaxBackoff = 50;
+        settings.spillCapacity = tests;
+        TextFileWriter writer = new TextFileWriter(settings);
+
+        //Test threads must not wait for the failing folder
+        long start = System.nanoTime();
+        runConcurrently(writer, resultFolder, tests, "");
+        assert( TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 30 );
+
+        assert( blockingFile.delete() );
+        writer.close();
+        TextFileWriterMetrics metrics = writer.getMetrics();
+        assert( metrics.getFailedWrites() >= 1 );
+        assert( metrics.getLostReports() == 0 );
+        assert( metrics.getFilesWritten() == tests );
+        verifyReports(new File(resultFolder + "_" + timeStamp), tests);
+    }
+
+    @Test
+    public void testFullSpillBufferCountsEveryLostReport() throws Exception {
+        AllObjects.setObject("timestamp", timeStamp);
+        tempFolder.newFile("blocked_" + timeStamp);
+        String resultFolder = new File(tempFolder.getRoot(), "blocked").toString();
+        int tests = Math.min(TESTS, 1000);
+        WriterSettings settings = new WriterSettings();
+        settings.retryAttempts = 3;
+        settings.retryBackoff = 1;
+        settings.spillCapacity = 16;
+        TextFileWriter writer = new TextFileWriter(settings);
+        runConcurrently(writer, resultFolder, tests, "");
+        writer.close();
+
+        //Nothing can be written, and every report is accounted for rather than silently dropped
+        TextFileWriterMetrics metrics = writer.getMetrics();
+        assert( metrics.getFilesWritten() == 0 );
+        assert( metrics.getLostReports() == tests );
+    }
+
+    @Test
+    public void testDiskFullMidWriteLeavesNoPartialFiles() throws Exception {
+        AllObjects.setObject("timestamp", timeStamp);
+        String resultFolder = tempFolder.newFolder("full").toString();
+        int tests = Math.min(TESTS, 1000);
+
+        //Response bodies go to sidecar files, and the disk fills up about half way through the run, in the middle of files
+        WriterSettings settings = new WriterSettings();
+        settings.bodyLimit = 100;
+        settings.bodyOverflow = BodyOverflow.SIDECAR;
+        settings.channelWrapper = new DiskBudget(tests * 1200L);
+        TextFileWriter writer = new TextFileWriter(settings);
+        runConcurrently(writer, resultFolder, tests, padding(2000));
+        writer.close();
+
+        //Every report on disk is complete, with its complete sidecar, and every other report is counted as lost
+        File folder = new File(resultFolder + "_" + timeStamp);
+        File[] files = folder.listFiles();
+        assert( files != null );
+        Set<String> sidecars = new HashSet<>();
+        Set<String> referenced = new HashSet<>();
+        Set<String> seen = new HashSet<>();
+        for (File file : files) {
+            assert( !file.getName().startsWith(".") );
+            if (file.getName().endsWith(ReportRenderer.BODY_SUFFIX)) {
+                sidecars.add(file.getName());
+                continue;
+            }
+            String report = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assert( report.startsWith("Results for test: Stress") );
+            String reference = report.substring(report.lastIndexOf("Response: [") + "Response: [".length());
+            assert( reference.endsWith("]") );
+            String sidecarName = reference.substring(reference.indexOf(" characters written to ") + " characters written to ".length(), reference.length() - 1);
+            int length = Integer.parseInt(reference.substring(0, reference.indexOf(' ')));
+            String body = new String(Files.readAllBytes(new File(folder, sidecarName).toPath()), StandardCharsets.UTF_8);
+            assert( body.length() == length );
+            assert( seen.add(body.substring(body.lastIndexOf("report-"))) );
+            referenced.add(sidecarName);
+        }
+        TextFileWriterMetrics metrics = writer.getMetrics();
+        assert( sidecars.equals(referenced) );
+        assert( seen.size() == metrics.getFilesWritten() );
+        assert( metrics.getFilesWritten() > 0 && metrics.getLostReports() > 0 );
+        assert( metrics.getFilesWritten() + metrics.getLostReports() == tests );
+    }
+
+    @Test
+    public void testDiskFullMidWriteIsRetriedWithoutLoss() throws Exception {
+        AllObjects.setObject("timestamp", timeStamp);
+        String resultFolder = tempFolder.newFolder("full").toString();
+        int tests = Math.min(TESTS, 1000);
+        WriterSettings settings = new WriterSettings();
+        settings.retryAttempts = 1000;
+        settings.retryBackoff = 1;
+        settings.retryMaxBackoff = 20;
+        settings.spillCapacity = tests;
+
+        //The disk fills up part way through the run and space is freed once the tests are done
+        DiskBudget budget = new DiskBudget(tests * 100L);
+        settings.channelWrapper = budget;
+        TextFileWriter writer = new TextFileWriter(settings);
+        runConcurrently(writer, resultFolder, tests, "");
+        budget.free();
+        writer.close();
+
+        TextFileWriterMetrics metrics = writer.getMetrics();
+        assert( metrics.getFailedWrites() >= 1 );
+        assert( metrics.getLostReports() == 0 );
+        assert( metrics.getFilesWritten() == tests );
+        verifyReports(new File(resultFolder + "_" + timeStamp), tests);
+    }
+
+    @Test
+    public void testArchiveOffsetsStayConsistentWhenWritesFail() throws Exception {
+        AllObjects.setObject("timestamp", timeStamp);
+        String resultFolder = tempFolder.newFolder("archive").toString();
+        int tests = Math.min(TESTS, 1000);
+        WriterSettings settings = new WriterSettings();
+        settings.output = OutputMode.ARCHIVE;
+        settings.compression = Compression.GZIP;
+        settings.retryAttempts = 1000;
+        settings.retryBackoff = 1;
+        settings.retryMaxBackoff = 5;
+        settings.spillCapacity = tests;
+
+        //Every seventh write to the segment fails, part way through the compressed member of a report
+        FailingWrites failingWrites = new FailingWrites(7);
+        settings.channelWrapper = failingWrites;
+        TextFileWriter writer = new TextFileWriter(settings);
+        runConcurrently(writer, resultFolder, tests, padding(2000));
+
+        //The volume recovers before the writer closes, so spilled reports get written on their last attempt
+        failingWrites.recover();
+        writer.close();
+
+        //The indexed members follow each other without gaps and each holds one complete report
+        File folder = new File(resultFolder + "_" + timeStamp);
+        byte[] segment = Files.readAllBytes(new File(folder, "results-0000.txt.gz").toPath());
+        List<String> index = Files.readAllLines(new File(folder, RunArchive.INDEX_FILE).toPath(), StandardCharsets.UTF_8);
+        assert( index.size() == tests );
+        long end = 0;
+        Set<String> seen = new HashSet<>();
+        for (String line : index) {
+            String[] fields = line.split("\t");
+            int offset = Integer.parseInt(fields[3]);
+            int length = Integer.parseInt(fields[4]);
+            assert( offset == end );
+            end = offset + length;
+            String report = gunzip(Arrays.copyOfRange(segment, offset, offset + length));
+            assert( report.startsWith("Results for test: " + fields[0] + ".xml") );
+            assert( seen.add(report.substring(report.lastIndexOf("report-"))) );
+        }
+        assert( end == segment.length );
+        assert( gunzip(segment).length() > 0 );
+        assert( writer.getMetrics().getFailedWrites() >= 1 );
+        assert( writer.getMetrics().getLostReports() == 0 );
+    }
+
+    //Write TESTS reports from THREADS callers, check every one is readable, and check the throughput
+    private void writeConcurrently(WriterSettings settings) throws Exception {
+        AllObjects.setObject("timestamp", timeStamp);
+        String resultFolder = tempFolder.newFolder("results").toString();
+        TextFileWriter writer = new TextFileWriter(settings);
+
+        long start = System.nanoTime();
+        runConcurrently(writer, resultFolder, TESTS, "");
+        writer.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        TextFileWriterMetrics metrics = writer.getMetrics();
+        assert( metrics.getFilesWritten() == TESTS );
+        assert( metrics.getFailedWrites() == 0 );
+        assert( metrics.getLostReports() == 0 );
+        verifyReports(new File(resultFolder + "_" + timeStamp), TESTS);
+        assert( !SOAK || TESTS / seconds >= MIN_REPORTS_PER_SECOND );
+    }
+
+    //Write reports with repeating test names and a unique response each, from several threads at once
+    private void runConcurrently(final TextFileWriter writer, final String resultFolder, final int tests, final String padding) throws InterruptedException {
+        final AtomicInteger next = new AtomicInteger();
+        final LinkedHashMap<String, String> assertionResults = new LinkedHashMap<>();
+        assertionResults.put("Assertion", "Result");
+        final Result passed = new Result(true, assertionResults);
+        final Result failed = new Result(false, assertionResults);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = next.getAndIncrement(); i < tests; i = next.getAndIncrement()) {
+                        TestData testData = new TestData("Stress" + (i % DISTINCT_NAMES) + ".xml", parsedData, resultFolder);
+                        writer.writeResults(testData, new Response(padding + "report-" + i), i % 10 == 0 ? failed : passed);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    //Check that the folder holds exactly one complete report for every response written, and no temporary files
+    private void verifyReports(File folder, int tests) throws IOException {
+        File[] files = folder.listFiles();
+        assert( files != null && files.length == tests );
+        Set<String> seen = new HashSet<>();
+        for (File file : files) {
+            assert( !file.getName().startsWith(".") );
+            String report = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assert( report.startsWith("Results for test: Stress") );
+            int response = report.lastIndexOf("Response: report-");
+            assert( response > 0 );
+            String id = report.substring(response + "Response: report-".length());
+            int i = Integer.parseInt(id);
+            assert( file.getName().startsWith("Stress" + (i % DISTINCT_NAMES)) );
+            assert( file.getName().contains("-FAILED") == (i % 10 == 0) );
+            assert( seen.add(id) );
+        }
+        assert( seen.size() == tests );
+    }
+
+    //Incompressible text placed before the report id in a response
+    private static String padding(int length) {
+        Random random = new Random(length);
+        StringBuilder padding = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            padding.append((char) ('a' + random.nextInt(26)));
+        }
+        return padding.toString();
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] chunk = new byte[8192];
+            int count;
+            while ((count = input.read(chunk)) >= 0) {
+                decompressed.write(chunk, 0, count);
+            }
+        }
+        return new String(decompressed.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Wraps result file channels in ones that let only part of some writes through before failing them, as a full or flaky volume would
+     */
+    private abstract static class FaultyStorage implements ChannelWrapper {
+
+        /**
+         * @param bytes the number of bytes about to be written
+         * @return how many of them reach the file before the write fails, or bytes to let the write through
+         */
+        abstract long allow(long bytes);
+
+        @Override
+        public WritableByteChannel wrap(final WritableByteChannel target) {
+            return new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer source) throws IOException {
+                    int requested = source.remaining();
+                    long allowed = allow(requested);
+                    if (allowed >= requested) {
+                        return target.write(source);
+                    }
+                    ByteBuffer part = source.duplicate();
+                    part.limit(part.position() + (int) Math.max(0, allowed));
+                    while (part.hasRemaining()) {
+                        target.write(part);
+                    }
+                    throw new IOException("No space left on device");
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return target.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    target.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * Fails writes once a number of bytes has been written, like a volume running out of space
+     */
+    private static class DiskBudget extends FaultyStorage {
+
+        private final AtomicLong remaining;
+
+        DiskBudget(long bytes) {
+            this.remaining = new AtomicLong(bytes);
+        }
+
+        @Override
+        long allow(long bytes) {
+            return Math.max(0, Math.min(bytes, remaining.getAndAdd(-bytes)));
+        }
+
+        void free() {
+            remaining.set(Long.MAX_VALUE / 2);
+        }
+    }
+
+    /**
+     * Fails every n-th write half way through until it recovers, like a flaky network volume
+     */
+    private static class FailingWrites extends FaultyStorage {
+
+        private final AtomicLong count = new AtomicLong();
+        private final int n;
+        private volatile boolean failing = true;
+
+        FailingWrites(int n) {
+            this.n = n;
+        }
+
+        @Override
+        long allow(long bytes) {
+            return failing && count.incrementAndGet() % n == 0 ? bytes / 2 : bytes;
+        }
+
+        void recover() {
+            failing = false;
+        }
+    }
+}
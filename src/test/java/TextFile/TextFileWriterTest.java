@@ -22,11 +22,18 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
 
 @RunWith(JUnit4.class)
 public class TextFileWriterTest {
@@ -306,4 +313,832 @@ public class TextFileWriterTest {
         assert( testString.equals(resultBody) );
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testAsyncWriteIsFlushedOnClose() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        WriterSettings settings = new WriterSettings();
+        settings.async = true;
+        settings.queueCapacity = 2;
+        TextFileWriter asyncFileWriter = new TextFileWriter(settings);
+        for (int i = 0; i < 10; i++) {
+            asyncFileWriter.writeResults(new TestData(testFileName + i + ".xml", parsedData, resultFolder), response, result);
+        }
+        asyncFileWriter.close();
+        for (int i = 0; i < 10; i++) {
+            File resultFile = new File(resultFolder + "_" + timeStamp + File.separator + testFileName + i + ".txt");
+            assert( resultFile.exists() );
+        }
+    }
+
+    @Test
+    public void testExecutorKeepsOrderWithinResultFolder() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        WriterSettings settings = new WriterSettings();
+        settings.executor = ExecutorMode.AUTO;
+        settings.executorMaxPending = 4;
+        TextFileWriter executorFileWriter = new TextFileWriter(settings);
+        for (int i = 0; i < 20; i++) {
+            executorFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), new Response("body " + i), result);
+            executorFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder + "-other"), new Response("body " + i), result);
+        }
+        executorFileWriter.close();
+        for (String folder : new String[] {resultFolder, resultFolder + "-other"}) {
+            for (int i = 0; i < 20; i++) {
+                File resultFile = new File(folder + "_" + timeStamp + File.separator + testFileName + (i == 0 ? "" : "-" + i) + ".txt");
+                String testString = null;
+                try {
+                    Scanner scanner = new Scanner(resultFile);
+                    testString = scanner.useDelimiter("\\Z").next();
+                    scanner.close();
+                } catch (FileNotFoundException e) {
+                    e.printStackTrace();
+                }
+                assert( testString != null && testString.endsWith("Response: body " + i) );
+            }
+        }
+    }
+
+    @Test
+    public void testOversizedResponseIsTruncated() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+        WriterSettings settings = new WriterSettings();
+        settings.bodyLimit = 4;
+        new TextFileWriter(settings).writeResults(testData, new Response("0123456789"), result);
+        File fileName = new File(resultFolder + "_" + timeStamp + File.separator + testFileName + ".txt");
+        String testString = null;
+        try {
+            Scanner scanner = new Scanner(fileName);
+            testString = scanner.useDelimiter("\\Z").next();
+            scanner.close();
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+        assert( testString != null );
+        assert( testString.endsWith("Response: 0123" + System.lineSeparator() + "[Truncated 6 of 10 characters]") );
+    }
+
+    @Test
+    public void testOversizedResponseIsMovedToBodyFile() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(false, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+        WriterSettings settings = new WriterSettings();
+        settings.bodyLimit = 4;
+        settings.bodyOverflow = BodyOverflow.SIDECAR;
+        new TextFileWriter(settings).writeResults(testData, new Response("0123456789"), result);
+        File fileName = new File(resultFolder + "_" + timeStamp + File.separator + testFileName + "-FAILED.txt");
+        File bodyFileName = new File(resultFolder + "_" + timeStamp + File.separator + testFileName + "-FAILED.body");
+        String testString = null;
+        String bodyString = null;
+        try {
+            Scanner scanner = new Scanner(fileName);
+            testString = scanner.useDelimiter("\\Z").next();
+            scanner.close();
+            scanner = new Scanner(bodyFileName);
+            bodyString = scanner.useDelimiter("\\Z").next();
+            scanner.close();
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+        assert( testString != null );
+        assert( testString.endsWith("Response: [10 characters written to " + testFileName + "-FAILED.body]") );
+        assert( "0123456789".equals(bodyString) );
+    }
+
+    @Test
+    public void testSidecarsOfFailedReportAreDiscarded() throws IOException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = tempFolder.newFolder("results");
+        String resultFolder = tempResultFolder.toString();
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+
+        //A folder in place of the attachments temporary file fails the report after its response body file was published
+        assert( new File(specificResultFolder, "." + testFileName + "-FAILED-attachments.body" + ReportFiles.TEMPORARY_SUFFIX).mkdirs() );
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(false, assertionResults);
+        Response oversizedResponse = new Response("0123456789");
+        oversizedResponse.setResponseAttachments("ABCDEFGHIJ");
+        WriterSettings settings = new WriterSettings();
+        settings.bodyLimit = 4;
+        settings.bodyOverflow = BodyOverflow.SIDECAR;
+        TextFileWriter sidecarFileWriter = new TextFileWriter(settings);
+        sidecarFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), oversizedResponse, result);
+        String[] resultFiles = specificResultFolder.list();
+        assert( resultFiles != null && resultFiles.length == 1 );
+        assert( resultFiles[0].equals("." + testFileName + "-FAILED-attachments.body" + ReportFiles.TEMPORARY_SUFFIX) );
+        assert( sidecarFileWriter.getMetrics().getFailedWrites() == 1 );
+    }
+
+    @Test
+    public void testSidecarNamesOfDifferentReportsDoNotCollide() throws IOException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        String resultFolder = tempFolder.newFolder("results").toString();
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        WriterSettings settings = new WriterSettings();
+        settings.bodyLimit = 4;
+        settings.bodyOverflow = BodyOverflow.SIDECAR;
+        settings.retryAttempts = 3;
+        TextFileWriter sidecarFileWriter = new TextFileWriter(settings);
+
+        //The attachments of one test and the response of the next both want Test-attachments.body
+        Response attachmentsResponse = new Response("0123");
+        attachmentsResponse.setResponseAttachments("ABCDEFGHIJ");
+        sidecarFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), attachmentsResponse, result);
+        sidecarFileWriter.writeResults(new TestData(testFileName + "-attachments.xml", parsedData, resultFolder), new Response("0123456789"), result);
+        sidecarFileWriter.close();
+
+        String attachmentsReport = readFile(new File(specificResultFolder, testFileName + ".txt"));
+        String responseReport = readFile(new File(specificResultFolder, testFileName + "-attachments.txt"));
+        assert( attachmentsReport.endsWith("[10 characters written to " + testFileName + "-attachments.body]") );
+        assert( responseReport.contains("Response: [10 characters written to " + testFileName + "-attachments-1.body]") );
+        assert( readFile(new File(specificResultFolder, testFileName + "-attachments.body")).equals("ABCDEFGHIJ") );
+        assert( readFile(new File(specificResultFolder, testFileName + "-attachments-1.body")).equals("0123456789") );
+        assert( sidecarFileWriter.getMetrics().getFilesWritten() == 2 );
+        assert( sidecarFileWriter.getMetrics().getLostReports() == 0 );
+    }
+
+    @Test
+    public void testBodyFileOnDiskIsNotReplaced() throws IOException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        String resultFolder = tempFolder.newFolder("results").toString();
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+
+        //Files left by an earlier writer keep their names, and only publishing the new report finds out
+        assert( specificResultFolder.mkdirs() );
+        Files.write(new File(specificResultFolder, testFileName + "-FAILED.txt").toPath(), "earlier report".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(specificResultFolder, testFileName + "-FAILED.body").toPath(), "earlier body".getBytes(StandardCharsets.UTF_8));
+        assertionResults.put(assertion, assertionResult);
+        WriterSettings settings = new WriterSettings();
+        settings.bodyLimit = 4;
+        settings.bodyOverflow = BodyOverflow.SIDECAR;
+        settings.summary = true;
+        TextFileWriter sidecarFileWriter = new TextFileWriter(settings);
+        sidecarFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), new Response("0123456789"), new Result(false, assertionResults));
+        sidecarFileWriter.close();
+
+        List<String> summary = Files.readAllLines(new File(specificResultFolder, RunSummary.SUMMARY_FILE).toPath(), StandardCharsets.UTF_8);
+        assert( readFile(new File(specificResultFolder, testFileName + "-FAILED.txt")).equals("earlier report") );
+        assert( readFile(new File(specificResultFolder, testFileName + "-FAILED.body")).equals("earlier body") );
+        assert( readFile(new File(specificResultFolder, testFileName + "-FAILED-1.txt")).endsWith("Response: [10 characters written to " + testFileName + "-FAILED-1.body]") );
+        assert( readFile(new File(specificResultFolder, testFileName + "-FAILED-1.body")).equals("0123456789") );
+        assert( summary.get(1).contains("\t" + testFileName + "-FAILED-1.txt\t") );
+        assert( sidecarFileWriter.getMetrics().getFailedWrites() == 0 );
+    }
+
+    @Test
+    public void testMappedUtf8FileContent() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 400000; i++) {
+            body.append("r\u00e9ponse \ud83d\ude00 ");
+        }
+        Response mappedResponse = new Response(body.toString());
+        WriterSettings settings = new WriterSettings();
+        settings.mapThreshold = 1;
+        settings.durability = Durability.FILE;
+        new TextFileWriter(settings).writeResults(testData, mappedResponse, result);
+        File fileName = new File(resultFolder + "_" + timeStamp + File.separator + testFileName + ".txt");
+        String testString = null;
+        try {
+            testString = new String(Files.readAllBytes(fileName.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultBody = "Results for test: " + testData.getTestName() + " --------- " + "Success" + System.lineSeparator() + System.lineSeparator() +
+                "Endpoint: " + testData.getParsedData().getRequest().getEndpoint() + System.lineSeparator() + System.lineSeparator() +
+                "Test: " + testData.getParsedData().getRequest().getTestBlock() + System.lineSeparator() + System.lineSeparator() +
+                "Assertion Results: " + System.lineSeparator() + assertionResultsString + System.lineSeparator() + System.lineSeparator() +
+                "Response: " + mappedResponse.getResponse();
+        assert( testString != null );
+        assert( testString.equals(resultBody) );
+        assert( Unmapper.isSupported() );
+    }
+
+    @Test
+    public void testArchiveReportsCanBeReadBack() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        WriterSettings settings = new WriterSettings();
+        settings.output = OutputMode.ARCHIVE;
+        settings.segmentSize = 1;
+        TextFileWriter archiveFileWriter = new TextFileWriter(settings);
+        for (int i = 0; i < 3; i++) {
+            archiveFileWriter.writeResults(new TestData(testFileName + i + ".xml", parsedData, resultFolder), response, new Result(i != 1, assertionResults));
+        }
+        archiveFileWriter.close();
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+        assert( new File(specificResultFolder, "results-0002.txt").exists() );
+        for (int i = 0; i < 3; i++) {
+            String testString = null;
+            try {
+                testString = RunArchive.read(specificResultFolder.toPath(), testFileName + i, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            String resultBody = "Results for test: " + testFileName + i + ".xml" + " --------- " + (i != 1 ? "Success" : "Failed (See assertion results below)") + System.lineSeparator() + System.lineSeparator() +
+                    "Endpoint: " + request.getEndpoint() + System.lineSeparator() + System.lineSeparator() +
+                    "Test: " + request.getTestBlock() + System.lineSeparator() + System.lineSeparator() +
+                    "Assertion Results: " + System.lineSeparator() + assertionResultsString + System.lineSeparator() + System.lineSeparator() +
+                    "Response: " + response.getResponse();
+            assert( testString != null );
+            assert( testString.equals(resultBody) );
+        }
+    }
+
+    @Test
+    public void testArchiveWrittenAfterCloseKeepsEarlierReports() throws IOException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        String resultFolder = tempFolder.newFolder("results").toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        WriterSettings settings = new WriterSettings();
+        settings.output = OutputMode.ARCHIVE;
+        settings.segmentSize = 1;
+        TextFileWriter archiveFileWriter = new TextFileWriter(settings);
+        for (int i = 0; i < 3; i++) {
+            archiveFileWriter.writeResults(new TestData(testFileName + i + ".xml", parsedData, resultFolder), response, result);
+        }
+        archiveFileWriter.close();
+
+        //A late result and a restarted writer both append to the run's archive
+        archiveFileWriter.writeResults(new TestData("Late.xml", parsedData, resultFolder), response, result);
+        archiveFileWriter.close();
+        TextFileWriter restartedFileWriter = new TextFileWriter(settings);
+        restartedFileWriter.writeResults(new TestData("Restarted.xml", parsedData, resultFolder), response, result);
+        restartedFileWriter.close();
+
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+        List<String> index = Files.readAllLines(new File(specificResultFolder, RunArchive.INDEX_FILE).toPath(), StandardCharsets.UTF_8);
+        assert( index.size() == 5 );
+        assert( new File(specificResultFolder, "results-0004.txt").exists() );
+        for (String testName : new String[] {testFileName + "0", testFileName + "1", testFileName + "2", "Late", "Restarted"}) {
+            String testString = RunArchive.read(specificResultFolder.toPath(), testName, StandardCharsets.UTF_8);
+            assert( testString != null );
+            assert( testString.startsWith("Results for test: " + testName + ".xml --------- Success") );
+            assert( testString.endsWith("Response: " + response.getResponse()) );
+        }
+    }
+
+    @Test
+    public void testAppendedArchiveSegmentKeepsOffsets() throws IOException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        String resultFolder = tempFolder.newFolder("results").toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        WriterSettings settings = new WriterSettings();
+        settings.output = OutputMode.ARCHIVE;
+        settings.compression = Compression.GZIP;
+        for (int i = 0; i < 2; i++) {
+            TextFileWriter archiveFileWriter = new TextFileWriter(settings);
+            archiveFileWriter.writeResults(new TestData(testFileName + i + ".xml", parsedData, resultFolder), response, result);
+            archiveFileWriter.close();
+        }
+
+        //Both runs share the single segment, the second report starting where the first ends
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+        List<String> index = Files.readAllLines(new File(specificResultFolder, RunArchive.INDEX_FILE).toPath(), StandardCharsets.UTF_8);
+        String[] first = index.get(0).split("\t");
+        String[] second = index.get(1).split("\t");
+        assert( index.size() == 2 );
+        assert( second[2].equals("results-0000.txt.gz") );
+        assert( Long.parseLong(second[3]) == Long.parseLong(first[3]) + Long.parseLong(first[4]) );
+        assert( Long.parseLong(second[3]) + Long.parseLong(second[4]) == new File(specificResultFolder, second[2]).length() );
+        assert( RunArchive.read(specificResultFolder.toPath(), testFileName + 0, StandardCharsets.UTF_8) != null );
+    }
+
+    @Test
+    public void testUncreatableFolderIsSkipped() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File blockingFile = null;
+        try {
+            blockingFile = tempFolder.newFile("results_" + timeStamp);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = new File(tempFolder.getRoot(), "results").toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+        testFileWriter.writeResults(testData, response, result);
+
+        //The folder is not tried again for the rest of the run, even once it could be created
+        assert( blockingFile.delete() );
+        testFileWriter.writeResults(testData, response, result);
+        assert( !blockingFile.exists() );
+        assert( testFileWriter.getMetrics().getFailedWrites() == 2 );
+
+        //The next run tries again
+        AllObjects.setObject("timestamp","NEXT STAMP");
+        testFileWriter.writeResults(testData, response, result);
+        AllObjects.setObject("timestamp","TIME STAMP");
+        assert( new File(resultFolder + "_NEXT STAMP" + File.separator + testFileName + ".txt").isFile() );
+        assert( testFileWriter.getMetrics().getFilesWritten() == 1 );
+    }
+
+    @Test
+    public void testRunSwitchKeepsEarlierReports() throws IOException {
+        String resultFolder = tempFolder.newFolder("results").toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+
+        //Results of two runs arrive interleaved, as when an earlier run's queued results are written late
+        String[] timestamps = {"RUN A", "RUN B", "RUN A", "RUN B"};
+        for (int i = 0; i < timestamps.length; i++) {
+            AllObjects.setObject("timestamp", timestamps[i]);
+            testFileWriter.writeResults(testData, new Response("body " + i), result);
+        }
+
+        //A restarted writer of the same run finds the files already there
+        new TextFileWriter().writeResults(testData, new Response("body 4"), result);
+        AllObjects.setObject("timestamp","TIME STAMP");
+
+        File runA = new File(resultFolder + "_RUN A");
+        File runB = new File(resultFolder + "_RUN B");
+        assert( readFile(new File(runA, testFileName + ".txt")).endsWith("Response: body 0") );
+        assert( readFile(new File(runA, testFileName + "-1.txt")).endsWith("Response: body 2") );
+        assert( readFile(new File(runB, testFileName + ".txt")).endsWith("Response: body 1") );
+        assert( readFile(new File(runB, testFileName + "-1.txt")).endsWith("Response: body 3") );
+        assert( readFile(new File(runB, testFileName + "-2.txt")).endsWith("Response: body 4") );
+        assert( runA.list().length == 2 && runB.list().length == 3 );
+    }
+
+    @Test
+    public void testConcurrentWritesOfSameNameAreKept() throws InterruptedException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        final String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        final Result result = new Result(true, assertionResults);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 25; j++) {
+                        testFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), response, result);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+        String[] resultFiles = specificResultFolder.list();
+        assert( resultFiles.length == 200 );
+        assert( new File(specificResultFolder, testFileName + ".txt").exists() );
+        assert( new File(specificResultFolder, testFileName + "-199.txt").exists() );
+    }
+
+    @Test
+    public void testMetricsCountWrittenAndFailedReports() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        File blockingFile = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+            blockingFile = tempFolder.newFile("blocked_" + timeStamp);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        testFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), response, result);
+        testFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, new File(tempFolder.getRoot(), "blocked").toString()), response, result);
+        File resultFile = new File(resultFolder + "_" + timeStamp + File.separator + testFileName + ".txt");
+        TextFileWriterMetrics metrics = testFileWriter.getMetrics();
+        assert( blockingFile.isFile() );
+        assert( metrics.getFilesWritten() == 1 );
+        assert( metrics.getFailedWrites() == 1 );
+        assert( metrics.getLostReports() == 1 );
+        assert( metrics.getBytesWritten() == resultFile.length() );
+        assert( metrics.getQueueDepth() == 0 );
+    }
+
+    @Test
+    public void testSpilledReportIsWrittenWhenFolderRecovers() throws InterruptedException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File blockingFile = null;
+        try {
+            blockingFile = tempFolder.newFile("blocked_" + timeStamp);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = new File(tempFolder.getRoot(), "blocked").toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(false, assertionResults);
+        WriterSettings settings = new WriterSettings();
+        settings.retryAttempts = 100;
+        settings.retryBackoff = 5;
+        settings.retryMaxBackoff = 20;
+        TextFileWriter retryingFileWriter = new TextFileWriter(settings);
+        retryingFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), response, result);
+        Thread.sleep(50);
+        assert( blockingFile.delete() );
+        retryingFileWriter.close();
+        TextFileWriterMetrics metrics = retryingFileWriter.getMetrics();
+        assert( new File(resultFolder + "_" + timeStamp + File.separator + testFileName + "-FAILED.txt").exists() );
+        assert( metrics.getFailedWrites() >= 1 );
+        assert( metrics.getFilesWritten() == 1 );
+        assert( metrics.getLostReports() == 0 );
+    }
+
+    @Test
+    public void testSpilledReportReplayedDuringNextRun() throws IOException, InterruptedException {
+        String resultFolder = new File(tempFolder.getRoot(), "results").toString();
+        File blockingFile = tempFolder.newFile("results_RUN A");
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+        WriterSettings settings = new WriterSettings();
+        settings.retryAttempts = 1000;
+        settings.retryBackoff = 5;
+        settings.retryMaxBackoff = 20;
+        TextFileWriter retryingFileWriter = new TextFileWriter(settings);
+
+        //The first run's report is spilled, and replayed once its folder can be created while the next run is writing
+        AllObjects.setObject("timestamp", "RUN A");
+        retryingFileWriter.writeResults(testData, new Response("body A"), result);
+        AllObjects.setObject("timestamp", "RUN B");
+        retryingFileWriter.writeResults(testData, new Response("body B1"), result);
+        assert( blockingFile.delete() );
+        File replayed = new File(resultFolder + "_RUN A" + File.separator + testFileName + ".txt");
+        for (int i = 0; i < 500 && !replayed.exists(); i++) {
+            Thread.sleep(10);
+        }
+        retryingFileWriter.writeResults(testData, new Response("body B2"), result);
+        retryingFileWriter.close();
+        AllObjects.setObject("timestamp","TIME STAMP");
+
+        //The replay left the names taken in the next run alone
+        assert( readFile(replayed).endsWith("Response: body A") );
+        assert( readFile(new File(resultFolder + "_RUN B" + File.separator + testFileName + ".txt")).endsWith("Response: body B1") );
+        assert( readFile(new File(resultFolder + "_RUN B" + File.separator + testFileName + "-1.txt")).endsWith("Response: body B2") );
+        assert( retryingFileWriter.getMetrics().getFilesWritten() == 3 );
+        assert( retryingFileWriter.getMetrics().getLostReports() == 0 );
+    }
+
+    @Test
+    public void testFailingSpilledReportDoesNotHoldUpOthers() throws IOException, InterruptedException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        String resultFolder = tempFolder.newFolder("results").toString();
+        String blockedFolder = new File(tempFolder.getRoot(), "blocked").toString();
+        File blockingFile = tempFolder.newFile("blocked_" + timeStamp);
+
+        //A folder in place of its attachments temporary file fails one report every time
+        assert( new File(resultFolder + "_" + timeStamp, ".Poison-attachments.body" + ReportFiles.TEMPORARY_SUFFIX).mkdirs() );
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        Response poisonResponse = new Response("0123");
+        poisonResponse.setResponseAttachments("ABCDEFGHIJ");
+        WriterSettings settings = new WriterSettings();
+        settings.bodyLimit = 4;
+        settings.bodyOverflow = BodyOverflow.SIDECAR;
+        settings.retryAttempts = 1000;
+        settings.retryBackoff = 200;
+        settings.retryMaxBackoff = 1000;
+        TextFileWriter retryingFileWriter = new TextFileWriter(settings);
+        retryingFileWriter.writeResults(new TestData("Poison.xml", parsedData, resultFolder), poisonResponse, result);
+        for (int i = 0; i < 3; i++) {
+            retryingFileWriter.writeResults(new TestData(testFileName + i + ".xml", parsedData, blockedFolder), response, result);
+        }
+
+        //The other reports are written once their folder recovers, while the failing one is still being retried
+        Thread.sleep(300);
+        assert( blockingFile.delete() );
+        File lastFile = new File(blockedFolder + "_" + timeStamp + File.separator + testFileName + "2.txt");
+        for (int i = 0; i < 100 && !lastFile.exists(); i++) {
+            Thread.sleep(50);
+        }
+        assert( lastFile.exists() );
+        assert( retryingFileWriter.getMetrics().getFilesWritten() == 3 );
+        retryingFileWriter.close();
+        assert( retryingFileWriter.getMetrics().getLostReports() == 1 );
+    }
+
+    @Test
+    public void testSpilledReportIsLostWhenFolderStaysUnavailable() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        try {
+            tempFolder.newFile("blocked_" + timeStamp);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = new File(tempFolder.getRoot(), "blocked").toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        WriterSettings settings = new WriterSettings();
+        settings.retryAttempts = 2;
+        settings.retryBackoff = 1;
+        TextFileWriter retryingFileWriter = new TextFileWriter(settings);
+        retryingFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), response, result);
+        retryingFileWriter.close();
+        TextFileWriterMetrics metrics = retryingFileWriter.getMetrics();
+        assert( metrics.getFilesWritten() == 0 );
+        assert( metrics.getLostReports() == 1 );
+    }
+
+    @Test
+    public void testCompressedFileContent() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(false, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+        WriterSettings settings = new WriterSettings();
+        settings.compression = Compression.GZIP;
+        settings.compressionLevel = 9;
+        TextFileWriter compressingFileWriter = new TextFileWriter(settings);
+        compressingFileWriter.writeResults(testData, response, result);
+        File fileName = new File(resultFolder + "_" + timeStamp + File.separator + testFileName + "-FAILED.txt.gz");
+        String testString = null;
+        try {
+            Scanner scanner = new Scanner(new GZIPInputStream(new FileInputStream(fileName)), "UTF-8");
+            testString = scanner.useDelimiter("\\Z").next();
+            scanner.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultBody = "Results for test: " + testData.getTestName() + " --------- " + "Failed (See assertion results below)" + System.lineSeparator() + System.lineSeparator() +
+                "Endpoint: " + testData.getParsedData().getRequest().getEndpoint() + System.lineSeparator() + System.lineSeparator() +
+                "Test: " + testData.getParsedData().getRequest().getTestBlock() + System.lineSeparator() + System.lineSeparator() +
+                "Assertion Results: " + System.lineSeparator() + assertionResultsString + System.lineSeparator() + System.lineSeparator() +
+                "Response: " + response.getResponse();
+        assert( testString != null );
+        assert( testString.equals(resultBody) );
+        assert( compressingFileWriter.getMetrics().getBytesWritten() == fileName.length() );
+    }
+
+    @Test
+    public void testCompressedArchiveReportsCanBeReadBack() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        WriterSettings settings = new WriterSettings();
+        settings.output = OutputMode.ARCHIVE;
+        settings.compression = Compression.GZIP;
+        TextFileWriter archiveFileWriter = new TextFileWriter(settings);
+        for (int i = 0; i < 3; i++) {
+            archiveFileWriter.writeResults(new TestData(testFileName + i + ".xml", parsedData, resultFolder), response, new Result(true, assertionResults));
+        }
+        archiveFileWriter.close();
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+        assert( new File(specificResultFolder, "results-0000.txt.gz").exists() );
+        String testString = null;
+        try {
+            testString = RunArchive.read(specificResultFolder.toPath(), testFileName + 1, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        assert( testString != null );
+        assert( testString.startsWith("Results for test: " + testFileName + 1 + ".xml --------- Success") );
+        assert( testString.endsWith("Response: " + response.getResponse()) );
+    }
+
+    @Test
+    public void testFailedArchiveReportIsRolledBack() throws IOException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        String resultFolder = tempFolder.newFolder("results").toString();
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+
+        //Enough incompressible assertion text reaches the segment before the blocked response body file fails the report
+        assert( new File(specificResultFolder, ".Blocked-FAILED.body.gz" + ReportFiles.TEMPORARY_SUFFIX).mkdirs() );
+        Random random = new Random(1);
+        StringBuilder noise = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            noise.append((char) ('a' + random.nextInt(26)));
+        }
+        LinkedHashMap<String,String> largeAssertionResults = new LinkedHashMap<>();
+        largeAssertionResults.put(assertion, noise.toString());
+        WriterSettings settings = new WriterSettings();
+        settings.output = OutputMode.ARCHIVE;
+        settings.compression = Compression.GZIP;
+        settings.bodyLimit = 4;
+        settings.bodyOverflow = BodyOverflow.SIDECAR;
+        TextFileWriter archiveFileWriter = new TextFileWriter(settings);
+        archiveFileWriter.writeResults(new TestData("Blocked.xml", parsedData, resultFolder), new Response("0123456789"), new Result(false, largeAssertionResults));
+        assertionResults.put(assertion, assertionResult);
+        archiveFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), response, new Result(true, assertionResults));
+        archiveFileWriter.close();
+
+        //The whole segment holds exactly the written report, indexed from the start
+        String testString = RunArchive.read(specificResultFolder.toPath(), testFileName, StandardCharsets.UTF_8);
+        List<String> index = Files.readAllLines(new File(specificResultFolder, RunArchive.INDEX_FILE).toPath(), StandardCharsets.UTF_8);
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        try (GZIPInputStream input = new GZIPInputStream(new FileInputStream(new File(specificResultFolder, "results-0000.txt.gz")))) {
+            byte[] chunk = new byte[8192];
+            int count;
+            while ((count = input.read(chunk)) >= 0) {
+                segment.write(chunk, 0, count);
+            }
+        }
+        assert( index.size() == 1 );
+        assert( index.get(0).split("\t")[3].equals("0") );
+        assert( testString != null && testString.equals(new String(segment.toByteArray(), StandardCharsets.UTF_8)) );
+        assert( archiveFileWriter.getMetrics().getFailedWrites() == 1 );
+    }
+
+    @Test
+    public void testFailuresVerbositySummarizesPasses() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+        WriterSettings settings = new WriterSettings();
+        settings.verbosity = Verbosity.FAILURES;
+        new TextFileWriter(settings).writeResults(testData, response, result);
+        File fileName = new File(resultFolder + "_" + timeStamp + File.separator + testFileName + ".txt");
+        String testString = null;
+        try {
+            Scanner scanner = new Scanner(fileName);
+            testString = scanner.useDelimiter("\\Z").next();
+            scanner.close();
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+        assert( testString != null );
+        assert( testString.equals("Results for test: " + testData.getTestName() + " --------- " + "Success") );
+    }
+
+    @Test
+    public void testDedupVerbosityReferencesUnchangedReports() {
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        TestData testData = new TestData(testFileName + ".xml", parsedData, resultFolder);
+        WriterSettings settings = new WriterSettings();
+        settings.verbosity = Verbosity.DEDUP;
+        for (String run : new String[] {"RUN1", "RUN2"}) {
+            AllObjects.setObject("timestamp", run);
+            TextFileWriter dedupFileWriter = new TextFileWriter(settings);
+            dedupFileWriter.writeResults(testData, response, result);
+            dedupFileWriter.close();
+        }
+        File firstFile = new File(resultFolder + "_RUN1" + File.separator + testFileName + ".txt");
+        File secondFile = new File(resultFolder + "_RUN2" + File.separator + testFileName + ".txt");
+        String testString = null;
+        try {
+            Scanner scanner = new Scanner(secondFile);
+            testString = scanner.useDelimiter("\\Z").next();
+            scanner.close();
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+        assert( firstFile.length() > secondFile.length() );
+        assert( testString != null );
+        assert( testString.equals("Results for test: " + testData.getTestName() + " --------- " + "Success (unchanged, full report in results_RUN1)") );
+    }
+
+    @Test
+    public void testRunSummaryListsEveryReport() {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        File tempResultFolder = null;
+        try {
+            tempResultFolder = tempFolder.newFolder("results");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        String resultFolder = tempResultFolder.toString();
+        assertionResults.put(assertion, assertionResult);
+        WriterSettings settings = new WriterSettings();
+        settings.summary = true;
+        TextFileWriter summaryFileWriter = new TextFileWriter(settings);
+        response.setResponseCode(200);
+        summaryFileWriter.writeResults(new TestData(testFileName + ".xml", parsedData, resultFolder), response, new Result(true, assertionResults));
+        summaryFileWriter.writeResults(new TestData(testFileName + "2.xml", parsedData, resultFolder), response, new Result(false, assertionResults));
+        summaryFileWriter.close();
+        File specificResultFolder = new File(resultFolder + "_" + timeStamp);
+        List<String> lines = null;
+        try {
+            lines = Files.readAllLines(new File(specificResultFolder, "summary.tsv").toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        assert( lines != null );
+        assert( lines.size() == 3 );
+        assert( lines.get(0).equals(RunSummary.HEADER) );
+        long failedLength = new File(specificResultFolder, testFileName + "2-FAILED.txt").length();
+        assert( lines.get(2).startsWith(testFileName + "2.xml\tFAILED\tendpoint\t200\tAssertion=Result\t" + testFileName + "2-FAILED.txt\t0\t" + failedLength + "\t") );
+    }
+
+
+    @Test
+    public void testRunSummaryWrittenAfterCloseKeepsEarlierLines() throws IOException {
+        AllObjects.setObject("timestamp","TIME STAMP");
+        String resultFolder = tempFolder.newFolder("results").toString();
+        assertionResults.put(assertion, assertionResult);
+        Result result = new Result(true, assertionResults);
+        WriterSettings settings = new WriterSettings();
+        settings.output = OutputMode.ARCHIVE;
+        settings.summary = true;
+        settings.writerThreads = 2;
+        settings.async = true;
+        TextFileWriter summaryFileWriter = new TextFileWriter(settings);
+        for (int i = 0; i < 3; i++) {
+            summaryFileWriter.writeResults(new TestData(testFileName + i + ".xml", parsedData, resultFolder), response, result);
+        }
+        summaryFileWriter.close();
+
+        //A late result is written on the calling thread and added below the earlier lines
+        summaryFileWriter.writeResults(new TestData("Late.xml", parsedData, resultFolder), response, result);
+        summaryFileWriter.close();
+        List<String> lines = Files.readAllLines(new File(resultFolder + "_" + timeStamp, RunSummary.SUMMARY_FILE).toPath(), StandardCharsets.UTF_8);
+        assert( lines.size() == 5 );
+        assert( lines.get(0).equals(RunSummary.HEADER) );
+        assert( lines.lastIndexOf(RunSummary.HEADER) == 0 );
+        assert( lines.get(4).startsWith("Late.xml\tPASSED\t") );
+    }
+
+
+    private static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}